@@ -0,0 +1,82 @@
+package org.example.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.config.WebConfig;
+import org.example.dto.VoiceNote;
+import org.example.metrics.PipelineMetrics;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The OpenAI client end to end against {@link StubOpenAiServer}: serialization, the HTTP exchange
+ * over a kept-alive connection and parsing of the response. A delay of the stub turns the
+ * benchmark from raw overhead into how many concurrent requests the client sustains.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+public class OpenAiClientBenchmark {
+
+    @Param({"0", "50"})
+    public long delayMillis;
+
+    private StubOpenAiServer server;
+    private OpenAiClient client;
+    private VoiceNote voiceNote;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new StubOpenAiServer(delayMillis);
+        WebConfig config = new WebConfig();
+        HttpClient chatHttpClient = config.chatHttpClient(Duration.ofSeconds(5));
+        HttpClient transcriptionHttpClient = config.transcriptionHttpClient(Duration.ofSeconds(5));
+        HttpUsage chatUsage = config.chatHttpUsage();
+        HttpUsage transcriptionUsage = config.transcriptionHttpUsage();
+        client = new OpenAiClient(chatHttpClient, transcriptionHttpClient, chatUsage, transcriptionUsage,
+                rateLimiter("chat"), rateLimiter("transcription"), rateLimiter("embedding"),
+                new TokenCounter("gpt-4o"), config.objectMapper(), new PipelineMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(client, "apiKey", "benchmark-key");
+        ReflectionTestUtils.setField(client, "chatApiUrl", server.url("/v1/chat/completions"));
+        ReflectionTestUtils.setField(client, "chatModel", "gpt-4o");
+        ReflectionTestUtils.setField(client, "maxContextTokens", 8000);
+        ReflectionTestUtils.setField(client, "systemRole", "You recommend books.");
+        ReflectionTestUtils.setField(client, "chatReadTimeout", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(client, "transcriptionApiUrl", server.url("/v1/audio/transcriptions"));
+        ReflectionTestUtils.setField(client, "voiceModel", "whisper-1");
+        ReflectionTestUtils.setField(client, "language", "en");
+        ReflectionTestUtils.setField(client, "transcriptionReadTimeout", Duration.ofSeconds(30));
+        // about three seconds of Opus audio
+        voiceNote = VoiceNote.inMemory("voice.ogg", new byte[12 * 1024]);
+    }
+
+    // no limits, the benchmark measures the client rather than the quota
+    private static OpenAiRateLimiter rateLimiter(String endpoint) {
+        return new OpenAiRateLimiter(endpoint, 0, 0, 1024, 1024, 1, Duration.ZERO, Duration.ZERO);
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public String promptModelAsync() {
+        return client.promptModelAsync("What should I read next?").join();
+    }
+
+    @Benchmark
+    public String streamModel() {
+        return client.streamModel("What should I read next?", delta -> {}).join();
+    }
+
+    @Benchmark
+    public String transcribeAsync() {
+        return client.transcribeAsync(voiceNote).join();
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * A local stand-in for the OpenAI endpoints, so the client can be measured end to end without the
+ * network. It answers at once; an optional delay simulates the time the model takes.
+ */
+class StubOpenAiServer implements AutoCloseable {
+
+    private static final byte[] COMPLETION = """
+            {"choices":[{"message":{"role":"assistant","content":"Try Piranesi by Susanna Clarke."}}]}
+            """.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] STREAM = ("data: {\"choices\":[{\"delta\":{\"role\":\"assistant\"}}]}\n\n"
+            + "data: {\"choices\":[{\"delta\":{\"content\":\"Try \"}}]}\n\n"
+            + "data: {\"choices\":[{\"delta\":{\"content\":\"Piranesi \"}}]}\n\n"
+            + "data: {\"choices\":[{\"delta\":{\"content\":\"by Susanna Clarke.\"}}]}\n\n"
+            + "data: [DONE]\n\n").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TRANSCRIPTION = """
+            {"text":"Mostly literary fiction, something like The Night Circus."}
+            """.getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+    private final long delayMillis;
+
+    StubOpenAiServer(long delayMillis) throws IOException {
+        this.delayMillis = delayMillis;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/v1/chat/completions", exchange -> {
+            boolean stream = new String(readBody(exchange), StandardCharsets.UTF_8).contains("\"stream\":true");
+            respond(exchange, stream ? "text/event-stream" : "application/json", stream ? STREAM : COMPLETION);
+        });
+        server.createContext("/v1/audio/transcriptions", exchange -> {
+            readBody(exchange);
+            respond(exchange, "application/json", TRANSCRIPTION);
+        });
+        server.start();
+    }
+
+    String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return in.readAllBytes();
+        }
+    }
+
+    private void respond(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
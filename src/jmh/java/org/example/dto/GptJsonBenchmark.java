@@ -0,0 +1,67 @@
+package org.example.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.config.WebConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JSON mapping done for every chat completion, with the object mapper the application uses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GptJsonBenchmark {
+
+    private ObjectMapper objectMapper;
+    private GptRequest request;
+    private byte[] response;
+    private byte[] chunk;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new WebConfig().objectMapper();
+        request = GptRequest.builder()
+                .model("gpt-4o")
+                .messages(List.of(
+                        GptRequest.Message.builder()
+                                .role("system")
+                                .content("You are a knowledgeable and friendly book recommendation assistant.")
+                                .build(),
+                        GptRequest.Message.builder()
+                                .role("user")
+                                .content("Here is the baseline question for our book recommendation session: "
+                                        + "What kind of stories do you enjoy the most?")
+                                .build()))
+                .build();
+        response = """
+                {"id":"chatcmpl-1","object":"chat.completion","created":1700000000,"model":"gpt-4o",
+                 "choices":[{"index":0,"message":{"role":"assistant","content":"Picture yourself in a cosy \
+                bookshop on a rainy afternoon. What kind of story would you pull off the shelf first?"},
+                 "finish_reason":"stop"}],
+                 "usage":{"prompt_tokens":52,"completion_tokens":24,"total_tokens":76}}
+                """.getBytes(StandardCharsets.UTF_8);
+        chunk = """
+                {"id":"chatcmpl-1","object":"chat.completion.chunk","choices":[{"index":0,"delta":{"content":" Piranesi"}}]}
+                """.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] serializeRequest() throws IOException {
+        return objectMapper.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public GptResponse deserializeResponse() throws IOException {
+        return objectMapper.readValue(response, GptResponse.class);
+    }
+
+    @Benchmark
+    public GptResponse deserializeStreamChunk() throws IOException {
+        return objectMapper.readValue(chunk, GptResponse.class);
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.repository;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session operations from many threads at once. With a single chat every thread updates the same
+ * session, which measures the contention on one map entry; with many chats the threads mostly
+ * work on sessions of their own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(8)
+public class DiscussionRepositoryBenchmark {
+
+    private static final int MAX_QUESTIONS = 3;
+
+    @Param({"1", "1024"})
+    public int chats;
+
+    private InMemoryDiscussionRepository repository;
+    private String[] chatIds;
+
+    @Setup
+    public void setUp() {
+        repository = new InMemoryDiscussionRepository(MAX_QUESTIONS, Duration.ofHours(1), 1_000_000, Duration.ofHours(1));
+        chatIds = new String[chats];
+        for (int i = 0; i < chats; i++) {
+            chatIds[i] = Integer.toString(1_000_000 + i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        repository.shutdown();
+    }
+
+    /**
+     * One turn of a session: a question, its answer and, after the last one, the end of the session.
+     */
+    @Benchmark
+    public int turn() {
+        String chatId = chatId();
+        repository.addQuestion(chatId, "What was the last book you could not put down?");
+        int asked;
+        try {
+            asked = repository.addAnswer(chatId, "Piranesi");
+        } catch (IllegalStateException e) {
+            // another thread finished the session in between
+            return 0;
+        }
+        if (asked >= MAX_QUESTIONS) {
+            return repository.finishInterview(chatId).size();
+        }
+        return asked;
+    }
+
+    @Benchmark
+    public int read() {
+        return repository.getUserQuestions(chatId());
+    }
+
+    private String chatId() {
+        return chatIds[ThreadLocalRandom.current().nextInt(chats)];
+    }
+}
@@ -0,0 +1,93 @@
+package org.example.repository;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Startup with a journal of {@code sessions} interviews of three answered questions each. The
+ * target is replaying 100k sessions well under a second; {@code replay} only reads the records,
+ * {@code restart} also rebuilds the sessions and compacts the journal, as the repository does on
+ * startup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class SessionJournalBenchmark {
+
+    private static final int MAX_QUESTIONS = 3;
+
+    @Param({"100000"})
+    public int sessions;
+
+    private Path directory;
+    private Path path;
+    private JournaledDiscussionRepository restarted;
+
+    @Setup(Level.Trial)
+    public void writeJournal() throws IOException {
+        directory = Files.createTempDirectory("journal-benchmark");
+        path = directory.resolve("sessions.journal");
+        JournaledDiscussionRepository repository = open();
+        for (int i = 0; i < sessions; i++) {
+            String chatId = Integer.toString(100_000_000 + i);
+            for (int q = 0; q < MAX_QUESTIONS; q++) {
+                repository.addQuestion(chatId, "What was the last book you could not put down?");
+                repository.addAnswer(chatId, "Piranesi, I read it in one sitting and then once more.");
+            }
+        }
+        repository.shutdown();
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeRestarted() throws IOException {
+        if (restarted != null) {
+            restarted.shutdown();
+            restarted = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteJournal() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public int replay() throws IOException {
+        try (SessionJournal journal = new SessionJournal(path, 16 * 1024 * 1024)) {
+            int[] answers = new int[1];
+            journal.replay((type, chatId, text) -> {
+                if (type == SessionJournal.ANSWER) {
+                    answers[0]++;
+                }
+            });
+            return answers[0];
+        }
+    }
+
+    @Benchmark
+    public int restart() throws IOException {
+        restarted = open();
+        return restarted.liveSessions();
+    }
+
+    private JournaledDiscussionRepository open() throws IOException {
+        InMemoryDiscussionRepository memory =
+                new InMemoryDiscussionRepository(MAX_QUESTIONS, Duration.ofHours(1), 1_000_000, Duration.ofHours(1));
+        return new JournaledDiscussionRepository(memory, path.toString(), DataSize.ofMegabytes(16),
+                Duration.ofHours(1), Duration.ofHours(1));
+    }
+}
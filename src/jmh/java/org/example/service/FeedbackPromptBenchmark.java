@@ -0,0 +1,46 @@
+package org.example.service;
+
+import org.example.client.Conversation;
+import org.example.client.TokenCounter;
+import org.example.dto.GptRequest;
+import org.example.dto.Question;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembling the prompt for the final recommendation from the questions and answers of a session,
+ * including counting its tokens.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FeedbackPromptBenchmark {
+
+    @Param({"3", "10"})
+    public int questions;
+
+    private static final String SYSTEM_ROLE = "You are a knowledgeable and friendly book recommendation assistant.";
+
+    private final TokenCounter tokenCounter = new TokenCounter("gpt-4o");
+    private List<Question> session;
+
+    @Setup
+    public void setUp() {
+        session = new ArrayList<>();
+        for (int i = 0; i < questions; i++) {
+            Question question = new Question();
+            question.setQuestion("Imagine you are browsing Goodreads late at night. Which genre keeps pulling you back, and why?");
+            question.setAnswer("Mostly literary fiction with a touch of the fantastic, something like Piranesi or The Night Circus.");
+            session.add(question);
+        }
+    }
+
+    @Benchmark
+    public List<GptRequest.Message> feedbackPrompt() {
+        Conversation conversation = new Conversation(tokenCounter, 8000).system(SYSTEM_ROLE);
+        return VoiceCommand.feedbackConversation(conversation, session).messages();
+    }
+}
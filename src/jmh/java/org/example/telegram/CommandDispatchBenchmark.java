@@ -0,0 +1,106 @@
+package org.example.telegram;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.client.Deadline;
+import org.example.cluster.ClusterRouter;
+import org.example.metrics.PipelineMetrics;
+import org.example.service.Command;
+import org.example.service.StartCommand;
+import org.example.service.VoiceCommand;
+import org.openjdk.jmh.annotations.*;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.Voice;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selecting the command for an update. The commands keep their real {@code isApplicable} but
+ * complete at once, so only the selection and the future composition are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandDispatchBenchmark {
+
+    private UpdateDispatcher dispatcher;
+    private TelegramSender sender;
+    private Bot bot;
+    private Update start;
+    private Update voice;
+    private Update unknown;
+
+    @Setup
+    public void setUp() {
+        PipelineMetrics metrics = new PipelineMetrics(new SimpleMeterRegistry());
+        List<Command> commands = List.of(
+                new StartCommand(null, null, null, null, metrics) {
+                    @Override
+                    public CompletableFuture<String> process(Update update, Bot bot, Deadline deadline) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                },
+                new VoiceCommand(null, null, null, null, null, null, metrics) {
+                    @Override
+                    public CompletableFuture<String> process(Update update, Bot bot, Deadline deadline) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                });
+        dispatcher = new UpdateDispatcher(256, 16, Duration.ZERO);
+        sender = new TelegramSender(Duration.ofSeconds(1), 30, 5, Duration.ZERO, metrics);
+        ClusterRouter clusterRouter = new ClusterRouter(false, "", List.of(), "", 128, Duration.ofSeconds(10), "",
+                Duration.ofSeconds(5), 3, Duration.ofMillis(500), new ObjectMapper());
+        bot = new Bot("benchmark-token", 1, Duration.ofSeconds(20), commands, dispatcher, sender, clusterRouter);
+
+        start = update(text("/start"));
+        Message voiceMessage = text(null);
+        Voice note = new Voice();
+        note.setFileId("voice-file");
+        voiceMessage.setVoice(note);
+        voice = update(voiceMessage);
+        unknown = update(text("hello"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        bot.onClosing();
+        dispatcher.shutdown();
+        sender.shutdown();
+    }
+
+    @Benchmark
+    public Void startCommand() {
+        return bot.handle(start).join();
+    }
+
+    @Benchmark
+    public Void voiceCommand() {
+        return bot.handle(voice).join();
+    }
+
+    @Benchmark
+    public Void noCommand() {
+        return bot.handle(unknown).join();
+    }
+
+    private static Message text(String text) {
+        Chat chat = new Chat();
+        chat.setId(42L);
+        chat.setType("private");
+        Message message = new Message();
+        message.setChat(chat);
+        message.setText(text);
+        return message;
+    }
+
+    private static Update update(Message message) {
+        Update update = new Update();
+        update.setMessage(message);
+        return update;
+    }
+}
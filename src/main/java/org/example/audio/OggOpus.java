@@ -0,0 +1,237 @@
+package org.example.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Just enough of the Ogg container (RFC 3533) and the Opus mapping (RFC 7845) to take a voice
+ * note apart into its packets and put it back together. Only a single logical stream is
+ * supported, which is what Telegram sends.
+ */
+final class OggOpus {
+
+    static final int SAMPLE_RATE = 48000;
+
+    private static final byte[] CAPTURE_PATTERN = "OggS".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OPUS_HEAD = "OpusHead".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OPUS_TAGS = "OpusTags".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_SIZE = 27;
+    private static final int CONTINUED = 0x01;
+    private static final int BEGINNING_OF_STREAM = 0x02;
+    private static final int END_OF_STREAM = 0x04;
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < CRC_TABLE.length; i++) {
+            int remainder = i << 24;
+            for (int bit = 0; bit < 8; bit++) {
+                remainder = (remainder & 0x80000000) != 0 ? (remainder << 1) ^ 0x04c11db7 : remainder << 1;
+            }
+            CRC_TABLE[i] = remainder;
+        }
+    }
+
+    private OggOpus() {
+    }
+
+    record Stream(int serial, byte[] head, byte[] tags, List<byte[]> audio) {}
+
+    /**
+     * Splits the container into the Opus header packets and the audio packets.
+     *
+     * @throws IllegalArgumentException if the data is not a well-formed Ogg Opus stream
+     */
+    static Stream read(byte[] ogg) {
+        List<byte[]> packets = new ArrayList<>();
+        ByteArrayOutputStream packet = new ByteArrayOutputStream();
+        Integer serial = null;
+        int position = 0;
+        while (position < ogg.length) {
+            if (ogg.length - position < HEADER_SIZE
+                    || !Arrays.equals(ogg, position, position + 4, CAPTURE_PATTERN, 0, 4)) {
+                throw new IllegalArgumentException("No Ogg page at byte " + position);
+            }
+            int pageSerial = readInt(ogg, position + 14);
+            if (serial != null && serial != pageSerial) {
+                throw new IllegalArgumentException("Multiplexed Ogg streams are not supported");
+            }
+            serial = pageSerial;
+            int segments = ogg[position + 26] & 0xff;
+            int bodyStart = position + HEADER_SIZE + segments;
+            if (bodyStart > ogg.length) {
+                throw new IllegalArgumentException("Truncated Ogg page at byte " + position);
+            }
+            int bodyLength = 0;
+            for (int i = 0; i < segments; i++) {
+                bodyLength += ogg[position + HEADER_SIZE + i] & 0xff;
+            }
+            int pageEnd = bodyStart + bodyLength;
+            if (pageEnd > ogg.length) {
+                throw new IllegalArgumentException("Truncated Ogg page at byte " + position);
+            }
+            if (crc(ogg, position, pageEnd) != readInt(ogg, position + 22)) {
+                throw new IllegalArgumentException("Corrupt Ogg page at byte " + position);
+            }
+            int offset = bodyStart;
+            for (int i = 0; i < segments; i++) {
+                int lacing = ogg[position + HEADER_SIZE + i] & 0xff;
+                packet.write(ogg, offset, lacing);
+                offset += lacing;
+                // a lacing value below 255 ends the packet, 255 continues it in the next segment
+                if (lacing < 255) {
+                    packets.add(packet.toByteArray());
+                    packet.reset();
+                }
+            }
+            position = pageEnd;
+        }
+        if (packets.size() < 2 || !startsWith(packets.get(0), OPUS_HEAD) || !startsWith(packets.get(1), OPUS_TAGS)) {
+            throw new IllegalArgumentException("Not an Opus stream");
+        }
+        return new Stream(serial, packets.get(0), packets.get(1), packets.subList(2, packets.size()));
+    }
+
+    /**
+     * Lays the packets out in pages again, {@code packetsPerPage} audio packets to a page. Granule
+     * positions are recounted from the packets, so they stay right when packets were left out.
+     */
+    static byte[] write(Stream stream, int packetsPerPage) {
+        Writer writer = new Writer(stream.serial());
+        // the identification header has a page of its own, the comment header ends its page
+        writer.packet(stream.head(), 0);
+        writer.endPage(false);
+        writer.packet(stream.tags(), 0);
+        writer.endPage(false);
+        long granule = 0;
+        List<byte[]> audio = stream.audio();
+        for (int i = 0; i < audio.size(); i++) {
+            granule += samples(audio.get(i));
+            writer.packet(audio.get(i), granule);
+            if ((i + 1) % packetsPerPage == 0 && i + 1 < audio.size()) {
+                writer.endPage(false);
+            }
+        }
+        writer.endPage(true);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Samples at 48 kHz the packet decodes to, from its table-of-contents byte (RFC 6716, 3.1).
+     */
+    static int samples(byte[] packet) {
+        if (packet.length == 0) {
+            return 0;
+        }
+        int toc = packet[0] & 0xff;
+        int config = toc >> 3;
+        int frameSamples;
+        if (config < 12) {
+            // SILK: 10, 20, 40 or 60 ms
+            frameSamples = new int[] {480, 960, 1920, 2880}[config & 3];
+        } else if (config < 16) {
+            // hybrid: 10 or 20 ms
+            frameSamples = (config & 1) == 0 ? 480 : 960;
+        } else {
+            // CELT: 2.5, 5, 10 or 20 ms
+            frameSamples = new int[] {120, 240, 480, 960}[config & 3];
+        }
+        int frames = switch (toc & 3) {
+            case 0 -> 1;
+            case 1, 2 -> 2;
+            default -> packet.length > 1 ? packet[1] & 0x3f : 0;
+        };
+        return frameSamples * frames;
+    }
+
+    private static boolean startsWith(byte[] packet, byte[] magic) {
+        return packet.length >= magic.length && Arrays.equals(packet, 0, magic.length, magic, 0, magic.length);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8
+                | (data[offset + 2] & 0xff) << 16 | (data[offset + 3] & 0xff) << 24;
+    }
+
+    private static void writeInt(byte[] data, int offset, int value) {
+        for (int i = 0; i < 4; i++) {
+            data[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    // the CRC field itself counts as zero
+    private static int crc(byte[] page, int start, int end) {
+        int crc = 0;
+        for (int i = start; i < end; i++) {
+            int value = i >= start + 22 && i < start + 26 ? 0 : page[i] & 0xff;
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ value) & 0xff];
+        }
+        return crc;
+    }
+
+    private static final class Writer {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final byte[] lacing = new byte[255];
+        private final int serial;
+        private int segments;
+        private int sequence;
+        private long granule = -1;
+        private boolean continued;
+
+        private Writer(int serial) {
+            this.serial = serial;
+        }
+
+        private void packet(byte[] packet, long granuleAfter) {
+            int offset = 0;
+            while (true) {
+                if (segments == lacing.length) {
+                    // the page is full, the packet goes on in the next one
+                    flush(false);
+                    continued = offset > 0;
+                }
+                int segment = Math.min(255, packet.length - offset);
+                lacing[segments++] = (byte) segment;
+                body.write(packet, offset, segment);
+                offset += segment;
+                if (segment < 255) {
+                    granule = granuleAfter;
+                    return;
+                }
+            }
+        }
+
+        private void endPage(boolean last) {
+            flush(last);
+            continued = false;
+        }
+
+        private void flush(boolean last) {
+            int flags = (continued ? CONTINUED : 0) | (sequence == 0 ? BEGINNING_OF_STREAM : 0)
+                    | (last ? END_OF_STREAM : 0);
+            byte[] page = new byte[HEADER_SIZE + segments + body.size()];
+            System.arraycopy(CAPTURE_PATTERN, 0, page, 0, 4);
+            page[5] = (byte) flags;
+            for (int i = 0; i < 8; i++) {
+                page[6 + i] = (byte) (granule >>> (8 * i));
+            }
+            writeInt(page, 14, serial);
+            writeInt(page, 18, sequence++);
+            page[26] = (byte) segments;
+            System.arraycopy(lacing, 0, page, HEADER_SIZE, segments);
+            System.arraycopy(body.toByteArray(), 0, page, HEADER_SIZE + segments, body.size());
+            writeInt(page, 22, crc(page, 0, page.length));
+            out.writeBytes(page);
+            body.reset();
+            segments = 0;
+            granule = -1;
+        }
+
+        private byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+}
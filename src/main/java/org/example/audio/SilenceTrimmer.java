@@ -0,0 +1,91 @@
+package org.example.audio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.example.dto.VoiceNote;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shortens the pauses of a voice note before it is transcribed, since transcription is billed and
+ * slowed by duration. Opus spends only a few bytes on a frame of silence, so packets of at most
+ * {@code bot.voice.silence.max-packet-bytes} are taken for silence; of every pause the first
+ * {@code bot.voice.silence.keep} is kept, so words do not run together, and the rest is left out.
+ * <p>
+ * Notes that are not Ogg Opus, or were spilled to disk for their size, are passed on unchanged.
+ */
+@Component
+public class SilenceTrimmer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SilenceTrimmer.class);
+
+    // about a second of 20 ms frames
+    private static final int PACKETS_PER_PAGE = 50;
+
+    private final boolean enabled;
+    private final int maxSilentPacketBytes;
+    private final long keepSamples;
+
+    private final LongAdder trimmedSamples = new LongAdder();
+    private final LongAdder trimmedBytes = new LongAdder();
+
+    public SilenceTrimmer(@Value("${bot.voice.silence.enabled:true}") boolean enabled,
+                          @Value("${bot.voice.silence.max-packet-bytes:10}") int maxSilentPacketBytes,
+                          @Value("${bot.voice.silence.keep:500ms}") Duration keep) {
+        this.enabled = enabled;
+        this.maxSilentPacketBytes = maxSilentPacketBytes;
+        this.keepSamples = keep.toMillis() * OggOpus.SAMPLE_RATE / 1000;
+    }
+
+    public VoiceNote trim(VoiceNote audio) {
+        if (!enabled || !audio.isInMemory()) {
+            return audio;
+        }
+        OggOpus.Stream stream;
+        try {
+            stream = OggOpus.read(audio.content());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Voice note is sent as it is: {}", e.getMessage());
+            return audio;
+        }
+        List<byte[]> kept = new ArrayList<>(stream.audio().size());
+        long pause = 0;
+        long dropped = 0;
+        for (byte[] packet : stream.audio()) {
+            int samples = OggOpus.samples(packet);
+            if (packet.length > maxSilentPacketBytes) {
+                pause = 0;
+            } else {
+                pause += samples;
+                if (pause > keepSamples) {
+                    dropped += samples;
+                    continue;
+                }
+            }
+            kept.add(packet);
+        }
+        if (dropped == 0) {
+            return audio;
+        }
+        byte[] trimmed = OggOpus.write(new OggOpus.Stream(stream.serial(), stream.head(), stream.tags(), kept),
+                PACKETS_PER_PAGE);
+        trimmedSamples.add(dropped);
+        trimmedBytes.add(audio.content().length - trimmed.length);
+        logger.info("Trimmed {} ms of silence, {} of {} bytes left", dropped * 1000 / OggOpus.SAMPLE_RATE,
+                trimmed.length, audio.content().length);
+        return VoiceNote.inMemory(audio.fileName(), trimmed);
+    }
+
+    public double trimmedSeconds() {
+        return (double) trimmedSamples.sum() / OggOpus.SAMPLE_RATE;
+    }
+
+    public long trimmedBytes() {
+        return trimmedBytes.sum();
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * A chat model answering prompts, remote or on a local server. {@link ModelRouter} picks the
+ * engine for each kind of prompt.
+ */
+public interface ChatEngine {
+
+    String model();
+
+    /**
+     * Starts a conversation with the system role, further instructions and turns are added by the
+     * caller.
+     */
+    Conversation conversation();
+
+    /**
+     * Completes without a thread waiting for the model, on the client's executor once the
+     * response has arrived. The call is cancelled when {@code deadline} passes.
+     */
+    CompletableFuture<String> promptModelAsync(Conversation conversation, Deadline deadline);
+
+    default CompletableFuture<String> promptModelAsync(Conversation conversation) {
+        return promptModelAsync(conversation, Deadline.NONE);
+    }
+
+    default CompletableFuture<String> promptModelAsync(String prompt, Deadline deadline) {
+        return promptModelAsync(conversation().user(prompt), deadline);
+    }
+
+    default CompletableFuture<String> promptModelAsync(String prompt) {
+        return promptModelAsync(prompt, Deadline.NONE);
+    }
+
+    /**
+     * Streams the completion: every content delta is passed to {@code onDelta} as soon as it
+     * arrives, the returned future completes with the whole text once the stream has ended.
+     */
+    CompletableFuture<String> streamModel(Conversation conversation, Consumer<String> onDelta, Deadline deadline);
+
+    default CompletableFuture<String> streamModel(Conversation conversation, Consumer<String> onDelta) {
+        return streamModel(conversation, onDelta, Deadline.NONE);
+    }
+
+    default CompletableFuture<String> streamModel(String prompt, Consumer<String> onDelta) {
+        return streamModel(conversation().user(prompt), onDelta);
+    }
+
+    /**
+     * Like {@link #promptModelAsync(Conversation, Deadline)}, along with the model that wrote the
+     * text, which is not {@link #model()} once the call has fallen back to another engine.
+     */
+    default CompletableFuture<Completion> completeAsync(Conversation conversation, Deadline deadline) {
+        return promptModelAsync(conversation, deadline).thenApply(text -> new Completion(model(), text));
+    }
+
+    /**
+     * Like {@link #streamModel(Conversation, Consumer, Deadline)}, along with the model that wrote
+     * the text.
+     */
+    default CompletableFuture<Completion> streamCompletion(Conversation conversation, Consumer<String> onDelta,
+                                                           Deadline deadline) {
+        return streamModel(conversation, onDelta, deadline).thenApply(text -> new Completion(model(), text));
+    }
+
+    record Completion(String model, String text) {}
+}
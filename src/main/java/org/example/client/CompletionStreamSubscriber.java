@@ -0,0 +1,116 @@
+package org.example.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.dto.GptResponse;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * Reads the server-sent events of a streamed chat completion line by line, hands every content
+ * delta to a consumer and collects the whole text. A chunk that cannot be parsed cancels the
+ * stream and fails the body, as the subscriber must not throw.
+ */
+class CompletionStreamSubscriber implements Flow.Subscriber<String> {
+
+    private static final String DATA_PREFIX = "data:";
+    private static final String DONE = "[DONE]";
+
+    private final ObjectMapper objectMapper;
+    private final Consumer<String> onDelta;
+    private final StringBuilder text = new StringBuilder();
+    private final CompletableFuture<String> body = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+
+    CompletionStreamSubscriber(ObjectMapper objectMapper, Consumer<String> onDelta) {
+        this.objectMapper = objectMapper;
+        this.onDelta = onDelta;
+    }
+
+    /**
+     * The body subscriber splitting the response into lines for this subscriber. Its body is
+     * completed here rather than by the line adapter, which never completes once cancelled.
+     */
+    HttpResponse.BodySubscriber<String> bodySubscriber() {
+        HttpResponse.BodySubscriber<Void> lines =
+                HttpResponse.BodySubscribers.fromLineSubscriber(this, ignored -> null, StandardCharsets.UTF_8, null);
+        return new HttpResponse.BodySubscriber<>() {
+            @Override
+            public CompletionStage<String> getBody() {
+                return body;
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                lines.onSubscribe(subscription);
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> item) {
+                lines.onNext(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                lines.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                lines.onComplete();
+            }
+        };
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(String line) {
+        // lines already on their way when the stream was cancelled may still arrive
+        if (body.isDone() || !line.startsWith(DATA_PREFIX)) {
+            return;
+        }
+        String data = line.substring(DATA_PREFIX.length()).trim();
+        if (data.isEmpty() || DONE.equals(data)) {
+            return;
+        }
+        GptResponse chunk;
+        try {
+            chunk = objectMapper.readValue(data, GptResponse.class);
+        } catch (JsonProcessingException e) {
+            subscription.cancel();
+            body.completeExceptionally(
+                    new IllegalStateException("There's an error when parsing a streamed chunk from GPT", e));
+            return;
+        }
+        if (chunk.getChoices() == null || chunk.getChoices().isEmpty()) {
+            return;
+        }
+        GptResponse.Message delta = chunk.getChoices().get(0).getDelta();
+        if (delta != null && delta.getContent() != null && !delta.getContent().isEmpty()) {
+            text.append(delta.getContent());
+            onDelta.accept(delta.getContent());
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        body.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        body.complete(text.toString());
+    }
+}
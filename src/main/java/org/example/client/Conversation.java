@@ -0,0 +1,98 @@
+package org.example.client;
+
+import org.example.dto.GptRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Messages of a chat completion request together with their token counts. System instructions
+ * come first and are never trimmed, so every request of a kind starts with the same prefix and
+ * benefits from the provider's prompt caching. Dialogue turns follow; when the whole conversation
+ * exceeds its token budget the oldest turns are left out, the latest one is always sent. Each
+ * message is counted once when it is added.
+ */
+public class Conversation {
+
+    private static final String OMITTED = "Earlier parts of this conversation were left out to save space.";
+
+    private final TokenCounter tokenCounter;
+    private final int maxTokens;
+    private final List<Entry> instructions = new ArrayList<>();
+    private final List<Entry> turns = new ArrayList<>();
+    private int instructionTokens;
+    private int turnTokens;
+
+    public Conversation(TokenCounter tokenCounter, int maxTokens) {
+        this.tokenCounter = tokenCounter;
+        this.maxTokens = maxTokens;
+    }
+
+    public Conversation system(String content) {
+        if (!turns.isEmpty()) {
+            throw new IllegalStateException("Instructions have to precede the dialogue");
+        }
+        Entry entry = new Entry(message("system", content),
+                tokenCounter.countInstruction(content) + TokenCounter.TOKENS_PER_MESSAGE);
+        instructions.add(entry);
+        instructionTokens += entry.tokens();
+        return this;
+    }
+
+    public Conversation assistant(String content) {
+        return turn("assistant", content);
+    }
+
+    public Conversation user(String content) {
+        return turn("user", content);
+    }
+
+    /**
+     * Tokens of the whole conversation as it would be sent without trimming, including the
+     * tokens that prime the reply.
+     */
+    public int tokens() {
+        return instructionTokens + turnTokens + TokenCounter.TOKENS_PER_REPLY;
+    }
+
+    /**
+     * The messages to send, trimmed to the token budget.
+     */
+    public List<GptRequest.Message> messages() {
+        List<GptRequest.Message> messages = new ArrayList<>(instructions.size() + turns.size() + 1);
+        instructions.forEach(entry -> messages.add(entry.message()));
+        if (tokens() <= maxTokens || turns.isEmpty()) {
+            turns.forEach(entry -> messages.add(entry.message()));
+            return messages;
+        }
+        int budget = maxTokens - instructionTokens - TokenCounter.TOKENS_PER_REPLY
+                - tokenCounter.countInstruction(OMITTED) - TokenCounter.TOKENS_PER_MESSAGE;
+        int first = turns.size() - 1;
+        int kept = turns.get(first).tokens();
+        while (first > 0 && kept + turns.get(first - 1).tokens() <= budget) {
+            first--;
+            kept += turns.get(first).tokens();
+        }
+        if (first > 0) {
+            messages.add(message("system", OMITTED));
+        }
+        turns.subList(first, turns.size()).forEach(entry -> messages.add(entry.message()));
+        return messages;
+    }
+
+    private Conversation turn(String role, String content) {
+        Entry entry = new Entry(message(role, content), tokenCounter.count(content) + TokenCounter.TOKENS_PER_MESSAGE);
+        turns.add(entry);
+        turnTokens += entry.tokens();
+        return this;
+    }
+
+    private static GptRequest.Message message(String role, String content) {
+        return GptRequest.Message.builder()
+                .role(role)
+                .content(content)
+                .build();
+    }
+
+    private record Entry(GptRequest.Message message, int tokens) {}
+}
@@ -0,0 +1,113 @@
+package org.example.client;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time left to process an update. It is passed down through every stage, calls bound to it
+ * are cancelled when it passes, which aborts their HTTP exchange, and calls started afterwards
+ * fail at once, and an HTTP call is given no longer than the time left as its timeout.
+ * {@link #NONE} never passes, for callers without a budget such as the caches.
+ */
+public final class Deadline implements AutoCloseable {
+
+    private static final ScheduledThreadPoolExecutor timer = timer();
+
+    public static final Deadline NONE = new Deadline(null);
+
+    private final Queue<CompletableFuture<?>> calls = new ConcurrentLinkedQueue<>();
+    private final ScheduledFuture<?> expiry;
+    private final long expiresAt;
+    private volatile boolean expired;
+    private volatile boolean closed;
+
+    private Deadline(Duration budget) {
+        this.expiresAt = budget == null ? 0 : System.nanoTime() + budget.toNanos();
+        this.expiry = budget == null ? null : timer.schedule(this::expire, budget.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    public static Deadline after(Duration budget) {
+        return new Deadline(budget);
+    }
+
+    // read from the clock as well, so a call timing out right at the deadline is not taken for a slow server
+    public boolean isExpired() {
+        return expired || (expiry != null && !closed && System.nanoTime() - expiresAt >= 0);
+    }
+
+    /**
+     * The time left, but no more than {@code atMost}; at least a millisecond, so it can serve as a
+     * timeout even once the deadline has passed.
+     */
+    public Duration remaining(Duration atMost) {
+        if (expiry == null) {
+            return atMost;
+        }
+        Duration left = Duration.ofNanos(Math.max(expiresAt - System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(1)));
+        return atMost == null || left.compareTo(atMost) < 0 ? left : atMost;
+    }
+
+    /**
+     * Throws the {@link CancellationException} a cancelled call fails with, so a stage is not
+     * started once the deadline has passed.
+     */
+    public void check() {
+        if (isExpired()) {
+            throw exceeded();
+        }
+    }
+
+    /**
+     * Cancels {@code call} when the deadline passes, at once if it already has. A shared future,
+     * such as one held by a cache, should be copied first.
+     */
+    public <T> CompletableFuture<T> bind(CompletableFuture<T> call) {
+        if (this == NONE || call.isDone()) {
+            return call;
+        }
+        calls.add(call);
+        call.whenComplete((result, e) -> calls.remove(call));
+        if (isExpired()) {
+            call.cancel(true);
+        }
+        return call;
+    }
+
+    /**
+     * Stops the timer once the update has been processed, calls still running are left alone.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (expiry != null) {
+            expiry.cancel(false);
+        }
+        calls.clear();
+    }
+
+    static CancellationException exceeded() {
+        return new CancellationException("The deadline has passed");
+    }
+
+    private void expire() {
+        expired = true;
+        CompletableFuture<?> call;
+        while ((call = calls.poll()) != null) {
+            call.cancel(true);
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor timer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+                Thread.ofPlatform().name("deadline").daemon().factory());
+        // most updates finish in time, their cancelled timers should not pile up until they were due
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+}
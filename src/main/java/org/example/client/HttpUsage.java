@@ -0,0 +1,54 @@
+package org.example.client;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Usage of the connections of one OpenAI endpoint. The JDK client does not expose its connection
+ * pool, so usage is tracked as the number of exchanges holding a connection at a time.
+ */
+public class HttpUsage {
+
+    private final String endpoint;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public HttpUsage(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public void acquire() {
+        requests.increment();
+        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public void failed() {
+        failures.increment();
+    }
+
+    public String endpoint() {
+        return endpoint;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public int peakInFlight() {
+        return peakInFlight.get();
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    public long failures() {
+        return failures.sum();
+    }
+}
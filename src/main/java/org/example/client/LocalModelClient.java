@@ -0,0 +1,159 @@
+package org.example.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.example.dto.GptRequest;
+import org.example.dto.VoiceNote;
+import org.example.metrics.PipelineMetrics;
+import org.example.metrics.PipelineMetrics.Stage;
+
+import java.io.FileNotFoundException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Models served on the local network by a server with an OpenAI-compatible API, such as the
+ * llama.cpp server for chat or a whisper server for transcriptions. They cost nothing per call
+ * but have few slots, so calls are limited to {@code openai.local.max-concurrency} at a time,
+ * halved while the server answers 503.
+ */
+@Component
+public class LocalModelClient implements ChatEngine, TranscriptionEngine {
+
+    private final boolean enabled;
+    private final String apiKey;
+    private final String chatApiUrl;
+    private final String chatModel;
+    private final int maxContextTokens;
+    private final String systemRole;
+    private final String transcriptionApiUrl;
+    private final String transcriptionModel;
+    private final String language;
+    private final Duration readTimeout;
+    private final HttpClient httpClient;
+    private final HttpUsage httpUsage;
+    private final OpenAiRateLimiter rateLimiter;
+    private final TokenCounter tokenCounter;
+    private final ObjectMapper objectMapper;
+    private final PipelineMetrics metrics;
+
+    public LocalModelClient(@Value("${openai.local.enabled:false}") boolean enabled,
+                            @Value("${openai.local.key:}") String apiKey,
+                            @Value("${openai.local.chat.url:http://localhost:8080/v1/chat/completions}") String chatApiUrl,
+                            @Value("${openai.local.chat.model:local}") String chatModel,
+                            @Value("${openai.local.chat.max-context-tokens:4096}") int maxContextTokens,
+                            @Value("${openai.api.chat.system_role}") String systemRole,
+                            @Value("${openai.local.transcription.url:http://localhost:8081/v1/audio/transcriptions}")
+                            String transcriptionApiUrl,
+                            @Value("${openai.local.transcription.model:whisper-1}") String transcriptionModel,
+                            @Value("${openai.api.transcription.language}") String language,
+                            @Value("${openai.local.read-timeout:60s}") Duration readTimeout,
+                            @Qualifier("localHttpClient") HttpClient httpClient,
+                            @Qualifier("localHttpUsage") HttpUsage httpUsage,
+                            @Qualifier("localRateLimiter") OpenAiRateLimiter rateLimiter,
+                            TokenCounter tokenCounter,
+                            ObjectMapper objectMapper,
+                            PipelineMetrics metrics) {
+        this.enabled = enabled;
+        this.apiKey = apiKey;
+        this.chatApiUrl = chatApiUrl;
+        this.chatModel = chatModel;
+        this.maxContextTokens = maxContextTokens;
+        this.systemRole = systemRole;
+        this.transcriptionApiUrl = transcriptionApiUrl;
+        this.transcriptionModel = transcriptionModel;
+        this.language = language;
+        this.readTimeout = readTimeout;
+        this.httpClient = httpClient;
+        this.httpUsage = httpUsage;
+        this.rateLimiter = rateLimiter;
+        this.tokenCounter = tokenCounter;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public String model() {
+        return chatModel;
+    }
+
+    @Override
+    public Conversation conversation() {
+        return new Conversation(tokenCounter, maxContextTokens).system(systemRole);
+    }
+
+    @Override
+    public CompletableFuture<String> promptModelAsync(Conversation conversation, Deadline deadline) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(chatRequest(conversation, false));
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("There's an error when serializing the chat request", e));
+        }
+        HttpRequest request = OpenAiProtocol.postJson(chatApiUrl, apiKey, readTimeout, body).build();
+        return metrics.time(Stage.CHAT, () -> OpenAiProtocol.send(httpClient, httpUsage, rateLimiter, 0, request,
+                        HttpResponse.BodyHandlers.ofString(), deadline))
+                .thenApply(response -> OpenAiProtocol.parseChatResponse(objectMapper, response));
+    }
+
+    @Override
+    public CompletableFuture<String> streamModel(Conversation conversation, Consumer<String> onDelta,
+                                                 Deadline deadline) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(chatRequest(conversation, true));
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("There's an error when serializing the chat request", e));
+        }
+        HttpRequest request = OpenAiProtocol.postJson(chatApiUrl, apiKey, readTimeout, body)
+                .header(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE)
+                .build();
+        return metrics.time(Stage.CHAT, () -> OpenAiProtocol.send(httpClient, httpUsage, rateLimiter, 0, request,
+                OpenAiProtocol.streamHandler(objectMapper, onDelta), deadline));
+    }
+
+    @Override
+    public CompletableFuture<String> transcribeAsync(VoiceNote audio, Deadline deadline) {
+        HttpRequest.BodyPublisher content;
+        try {
+            content = audio.isInMemory()
+                    ? HttpRequest.BodyPublishers.ofByteArray(audio.content())
+                    : HttpRequest.BodyPublishers.ofFile(audio.spillFile());
+        } catch (FileNotFoundException e) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Audio file to transcribe is missing", e));
+        }
+        MultipartPublisher multipart = new MultipartPublisher()
+                .file("file", audio.fileName(), "audio/ogg", content)
+                .field("model", transcriptionModel)
+                .field("language", language);
+        HttpRequest request = OpenAiProtocol.post(transcriptionApiUrl, apiKey, readTimeout, multipart.contentType())
+                .POST(multipart.build())
+                .build();
+        return metrics.time(Stage.TRANSCRIPTION, () -> OpenAiProtocol.send(httpClient, httpUsage, rateLimiter, 0,
+                        request, HttpResponse.BodyHandlers.ofString(), deadline))
+                .thenApply(response -> OpenAiProtocol.parseTranscription(objectMapper, response));
+    }
+
+    private GptRequest chatRequest(Conversation conversation, boolean stream) {
+        return GptRequest.builder()
+                .model(chatModel)
+                .messages(conversation.messages())
+                .stream(stream ? true : null)
+                .build();
+    }
+}
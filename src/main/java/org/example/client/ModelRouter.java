@@ -0,0 +1,143 @@
+package org.example.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Decides which engine serves a call. Every {@link PromptType} and the transcriptions are routed
+ * to {@code remote} (OpenAI) or {@code local} (the {@link LocalModelClient}) by
+ * {@code openai.routes.*}: cheap calls such as rephrasing a question suit a fast local model,
+ * the final recommendation is worth the remote one. A local call that fails is repeated remotely
+ * unless its deadline has passed, and with the local server disabled everything goes to OpenAI.
+ */
+@Component
+public class ModelRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelRouter.class);
+
+    enum Target { REMOTE, LOCAL }
+
+    private final Map<PromptType, ChatEngine> chatEngines = new EnumMap<>(PromptType.class);
+    private final TranscriptionEngine transcriptionEngine;
+
+    public ModelRouter(OpenAiClient remote,
+                       LocalModelClient local,
+                       @Value("${openai.routes.reading:local}") String reading,
+                       @Value("${openai.routes.question:local}") String question,
+                       @Value("${openai.routes.feedback:remote}") String feedback,
+                       @Value("${openai.routes.transcription:remote}") String transcription) {
+        boolean localEnabled = local.isEnabled();
+        chatEngines.put(PromptType.READING, chatEngine(target(reading, localEnabled), remote, local));
+        chatEngines.put(PromptType.QUESTION, chatEngine(target(question, localEnabled), remote, local));
+        chatEngines.put(PromptType.FEEDBACK, chatEngine(target(feedback, localEnabled), remote, local));
+        this.transcriptionEngine = target(transcription, localEnabled) == Target.LOCAL
+                ? (audio, deadline) -> withFallback(local.transcribeAsync(audio, deadline),
+                        () -> remote.transcribeAsync(audio, deadline), deadline)
+                : remote;
+    }
+
+    public ChatEngine chat(PromptType type) {
+        return chatEngines.get(type);
+    }
+
+    public TranscriptionEngine transcription() {
+        return transcriptionEngine;
+    }
+
+    static Target target(String route, boolean localEnabled) {
+        Target target = Target.valueOf(route.strip().toUpperCase(Locale.ROOT));
+        return localEnabled ? target : Target.REMOTE;
+    }
+
+    private static ChatEngine chatEngine(Target target, OpenAiClient remote, LocalModelClient local) {
+        return target == Target.LOCAL ? new FallbackChatEngine(local, remote) : remote;
+    }
+
+    private static <T> CompletableFuture<T> withFallback(CompletableFuture<T> call,
+                                                         Supplier<CompletableFuture<T>> fallback,
+                                                         Deadline deadline) {
+        return call.exceptionallyCompose(e -> {
+            if (deadline.isExpired()) {
+                return CompletableFuture.failedFuture(e);
+            }
+            logger.warn("Local model failed, asking OpenAI instead", e);
+            return fallback.get();
+        });
+    }
+
+    /**
+     * The local engine, backed by the remote one. A stream is only repeated remotely if nothing of
+     * it has been passed on yet, the reader would otherwise see the beginning twice.
+     */
+    static class FallbackChatEngine implements ChatEngine {
+        private final ChatEngine primary;
+        private final ChatEngine fallback;
+
+        FallbackChatEngine(ChatEngine primary, ChatEngine fallback) {
+            this.primary = primary;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public String model() {
+            return primary.model();
+        }
+
+        @Override
+        public Conversation conversation() {
+            return primary.conversation();
+        }
+
+        @Override
+        public CompletableFuture<String> promptModelAsync(Conversation conversation, Deadline deadline) {
+            return withFallback(primary.promptModelAsync(conversation, deadline),
+                    () -> fallback.promptModelAsync(conversation, deadline), deadline);
+        }
+
+        @Override
+        public CompletableFuture<String> streamModel(Conversation conversation, Consumer<String> onDelta,
+                                                     Deadline deadline) {
+            return stream(onDelta, deadline, (engine, deltas) -> engine.streamModel(conversation, deltas, deadline));
+        }
+
+        @Override
+        public CompletableFuture<Completion> completeAsync(Conversation conversation, Deadline deadline) {
+            return withFallback(primary.completeAsync(conversation, deadline),
+                    () -> fallback.completeAsync(conversation, deadline), deadline);
+        }
+
+        @Override
+        public CompletableFuture<Completion> streamCompletion(Conversation conversation, Consumer<String> onDelta,
+                                                              Deadline deadline) {
+            return stream(onDelta, deadline,
+                    (engine, deltas) -> engine.streamCompletion(conversation, deltas, deadline));
+        }
+
+        private <T> CompletableFuture<T> stream(Consumer<String> onDelta, Deadline deadline,
+                                                BiFunction<ChatEngine, Consumer<String>, CompletableFuture<T>> call) {
+            AtomicBoolean started = new AtomicBoolean();
+            return call.apply(primary, delta -> {
+                        started.set(true);
+                        onDelta.accept(delta);
+                    })
+                    .exceptionallyCompose(e -> {
+                        if (started.get() || deadline.isExpired()) {
+                            return CompletableFuture.failedFuture(e);
+                        }
+                        logger.warn("Local model failed, asking OpenAI instead", e);
+                        return call.apply(fallback, onDelta);
+                    });
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.client;
+
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Builds a {@code multipart/form-data} body for the JDK client. Parts are chained publishers, so a
+ * file part is streamed from its source rather than copied into the body first.
+ */
+class MultipartPublisher {
+
+    private final String boundary = "----what-to-read-" + UUID.randomUUID();
+    private final List<HttpRequest.BodyPublisher> parts = new ArrayList<>();
+
+    MultipartPublisher field(String name, String value) {
+        parts.add(HttpRequest.BodyPublishers.ofString("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n"
+                + value + "\r\n"));
+        return this;
+    }
+
+    MultipartPublisher file(String name, String fileName, String contentType, HttpRequest.BodyPublisher content) {
+        parts.add(HttpRequest.BodyPublishers.ofString("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + fileName + "\"\r\n"
+                + "Content-Type: " + contentType + "\r\n\r\n"));
+        parts.add(content);
+        parts.add(HttpRequest.BodyPublishers.ofString("\r\n"));
+        return this;
+    }
+
+    String contentType() {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    HttpRequest.BodyPublisher build() {
+        List<HttpRequest.BodyPublisher> body = new ArrayList<>(parts);
+        body.add(HttpRequest.BodyPublishers.ofString("--" + boundary + "--\r\n"));
+        return HttpRequest.BodyPublishers.concat(body.toArray(HttpRequest.BodyPublisher[]::new));
+    }
+}
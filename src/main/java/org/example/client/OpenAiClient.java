@@ -2,24 +2,32 @@ package org.example.client;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.http.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.RestTemplate;
+import org.example.dto.EmbeddingRequest;
+import org.example.dto.EmbeddingResponse;
 import org.example.dto.GptRequest;
-import org.example.dto.GptResponse;
-import org.example.dto.Transcription;
-
-import java.io.File;
-import java.util.List;
-
+import org.example.dto.VoiceNote;
+import org.example.metrics.PipelineMetrics;
+import org.example.metrics.PipelineMetrics.Stage;
+
+import java.io.FileNotFoundException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * The OpenAI endpoints: chat completions, transcriptions and embeddings.
+ */
 @Component
-@RequiredArgsConstructor
-public class OpenAiClient {
+public class OpenAiClient implements ChatEngine, TranscriptionEngine {
 
     @Value("${openai.api.key}")
     private String apiKey;
@@ -33,6 +41,22 @@ public class OpenAiClient {
     @Value("${openai.api.chat.system_role}")
     private String systemRole;
 
+    @Value("${openai.api.chat.read-timeout:60s}")
+    private Duration chatReadTimeout;
+
+    // counted against the tokens per minute along with the prompt, the model does not know in advance
+    @Value("${openai.limits.chat.completion-tokens:500}")
+    private int completionTokens;
+
+    @Value("${openai.context.max-tokens:8000}")
+    private int maxContextTokens;
+
+    @Value("${openai.api.embedding.url:https://api.openai.com/v1/embeddings}")
+    private String embeddingApiUrl;
+
+    @Value("${openai.api.embedding.model:text-embedding-3-small}")
+    private String embeddingModel;
+
     @Value("${openai.api.transcription.url}")
     private String transcriptionApiUrl;
 
@@ -42,58 +66,174 @@ public class OpenAiClient {
     @Value("${openai.api.transcription.language}")
     private String language;
 
-    private final RestTemplate restTemplate;
+    @Value("${openai.api.transcription.read-timeout:120s}")
+    private Duration transcriptionReadTimeout;
+
+    private final HttpClient chatHttpClient;
+    private final HttpClient transcriptionHttpClient;
+    private final HttpUsage chatHttpUsage;
+    private final HttpUsage transcriptionHttpUsage;
+    private final OpenAiRateLimiter chatRateLimiter;
+    private final OpenAiRateLimiter transcriptionRateLimiter;
+    private final OpenAiRateLimiter embeddingRateLimiter;
+    private final TokenCounter tokenCounter;
     private final ObjectMapper objectMapper;
+    private final PipelineMetrics metrics;
+
+    public OpenAiClient(@Qualifier("chatHttpClient") HttpClient chatHttpClient,
+                        @Qualifier("transcriptionHttpClient") HttpClient transcriptionHttpClient,
+                        @Qualifier("chatHttpUsage") HttpUsage chatHttpUsage,
+                        @Qualifier("transcriptionHttpUsage") HttpUsage transcriptionHttpUsage,
+                        @Qualifier("chatRateLimiter") OpenAiRateLimiter chatRateLimiter,
+                        @Qualifier("transcriptionRateLimiter") OpenAiRateLimiter transcriptionRateLimiter,
+                        @Qualifier("embeddingRateLimiter") OpenAiRateLimiter embeddingRateLimiter,
+                        TokenCounter tokenCounter,
+                        ObjectMapper objectMapper,
+                        PipelineMetrics metrics) {
+        this.chatHttpClient = chatHttpClient;
+        this.transcriptionHttpClient = transcriptionHttpClient;
+        this.chatHttpUsage = chatHttpUsage;
+        this.transcriptionHttpUsage = transcriptionHttpUsage;
+        this.chatRateLimiter = chatRateLimiter;
+        this.transcriptionRateLimiter = transcriptionRateLimiter;
+        this.embeddingRateLimiter = embeddingRateLimiter;
+        this.tokenCounter = tokenCounter;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+    }
 
-    public String promptModel(String prompt) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBearerAuth(apiKey);
+    @Override
+    public String model() {
+        return chatModel;
+    }
 
-        GptRequest body = GptRequest.builder()
-                .model(chatModel)
-                .messages(List.of(
-                        GptRequest.Message.builder()
-                                .role("system")
-                                .content(systemRole)
-                                .build(),
-                        GptRequest.Message.builder()
-                                .role("user")
-                                .content(prompt)
-                                .build()
-                ))
+    @Override
+    public Conversation conversation() {
+        return new Conversation(tokenCounter, maxContextTokens).system(systemRole);
+    }
+
+    @Override
+    public CompletableFuture<String> promptModelAsync(Conversation conversation, Deadline deadline) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(chatRequest(conversation));
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("There's an error when serializing the GPT request", e));
+        }
+        HttpRequest request = OpenAiProtocol.postJson(chatApiUrl, apiKey, chatReadTimeout, body).build();
+        return metrics.time(Stage.CHAT, () -> OpenAiProtocol.send(chatHttpClient, chatHttpUsage, chatRateLimiter,
+                        estimateTokens(conversation), request, HttpResponse.BodyHandlers.ofString(), deadline))
+                .thenApply(this::parseChatResponse);
+    }
+
+    @Override
+    public CompletableFuture<String> streamModel(Conversation conversation, Consumer<String> onDelta,
+                                                 Deadline deadline) {
+        GptRequest chatRequest = chatRequest(conversation);
+        chatRequest.setStream(true);
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(chatRequest);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("There's an error when serializing the GPT request", e));
+        }
+        HttpRequest request = OpenAiProtocol.postJson(chatApiUrl, apiKey, chatReadTimeout, body)
+                .header(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE)
                 .build();
+        return metrics.time(Stage.CHAT, () -> OpenAiProtocol.send(chatHttpClient, chatHttpUsage, chatRateLimiter,
+                estimateTokens(conversation), request, OpenAiProtocol.streamHandler(objectMapper, onDelta), deadline));
+    }
 
-        HttpEntity<GptRequest> request = new HttpEntity<>(body, headers);
-        ResponseEntity<String> response = restTemplate.postForEntity(chatApiUrl, request, String.class);
-        GptResponse responseBody;
+    /**
+     * Embeds the text with the embedding model. The request shares the chat endpoint's connections,
+     * the endpoint has a quota of its own. The call is cancelled when {@code deadline} passes.
+     */
+    public CompletableFuture<float[]> embedAsync(String text, Deadline deadline) {
+        byte[] body;
         try {
-            responseBody = objectMapper.readValue(response.getBody(), GptResponse.class);
+            body = objectMapper.writeValueAsBytes(new EmbeddingRequest(embeddingModel, text));
         } catch (JsonProcessingException e) {
-            throw new IllegalStateException("There's an error when parsing JSON response from GPT", e);
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("There's an error when serializing the embedding request", e));
+        }
+        HttpRequest request = OpenAiProtocol.postJson(embeddingApiUrl, apiKey, chatReadTimeout, body).build();
+        return metrics.time(Stage.EMBEDDING, () -> OpenAiProtocol.send(chatHttpClient, chatHttpUsage,
+                        embeddingRateLimiter, tokenCounter.count(text), request, HttpResponse.BodyHandlers.ofString(),
+                        deadline))
+                .thenApply(this::parseEmbedding);
+    }
+
+    /**
+     * Audio held in memory is uploaded straight from its buffer, spilled audio is streamed from disk.
+     */
+    @Override
+    public CompletableFuture<String> transcribeAsync(VoiceNote audio, Deadline deadline) {
+        HttpRequest.BodyPublisher content;
+        try {
+            content = audio.isInMemory()
+                    ? HttpRequest.BodyPublishers.ofByteArray(audio.content())
+                    : HttpRequest.BodyPublishers.ofFile(audio.spillFile());
+        } catch (FileNotFoundException e) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Audio file to transcribe is missing", e));
         }
-        return responseBody.getChoices().get(0).getMessage().getContent();
+        MultipartPublisher multipart = new MultipartPublisher()
+                .file("file", audio.fileName(), "audio/ogg", content)
+                .field("model", voiceModel)
+                .field("language", language);
+        HttpRequest request = OpenAiProtocol.post(transcriptionApiUrl, apiKey, transcriptionReadTimeout,
+                        multipart.contentType())
+                .POST(multipart.build())
+                .build();
+        return metrics.time(Stage.TRANSCRIPTION, () -> OpenAiProtocol.send(transcriptionHttpClient, transcriptionHttpUsage,
+                        transcriptionRateLimiter, 0, request, HttpResponse.BodyHandlers.ofString(), deadline))
+                .thenApply(this::parseTranscription);
     }
 
-    public String transcribe(File audio) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Authorization", "Bearer " + apiKey);
-        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+    /**
+     * Opens the connections to the chat and transcription endpoints ahead of the first call, so it
+     * does not pay for the TLS handshake. Any response will do.
+     */
+    public CompletableFuture<Void> warmUp() {
+        return CompletableFuture.allOf(connect(chatHttpClient, chatApiUrl, chatReadTimeout),
+                connect(transcriptionHttpClient, transcriptionApiUrl, chatReadTimeout));
+    }
 
-        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-        FileSystemResource fileResource = new FileSystemResource(audio);
-        body.add("file", fileResource);
-        body.add("model", voiceModel);
-        body.add("language", language);
+    private static CompletableFuture<Void> connect(HttpClient httpClient, String url, Duration timeout) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .timeout(timeout)
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).thenApply(response -> null);
+    }
 
-        HttpEntity<MultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
-        ResponseEntity<String> response = restTemplate.postForEntity(transcriptionApiUrl, requestEntity, String.class);
-        Transcription transcription;
+    private GptRequest chatRequest(Conversation conversation) {
+        return GptRequest.builder()
+                .model(chatModel)
+                .messages(conversation.messages())
+                .build();
+    }
+
+    private String parseChatResponse(String body) {
+        return OpenAiProtocol.parseChatResponse(objectMapper, body);
+    }
+
+    private float[] parseEmbedding(String body) {
+        EmbeddingResponse response;
         try {
-            transcription = objectMapper.readValue(response.getBody(), Transcription.class);
+            response = objectMapper.readValue(body, EmbeddingResponse.class);
         } catch (JsonProcessingException e) {
-            throw new IllegalStateException("There was an error when converting JSON response to DTO", e);
+            throw new IllegalStateException("There's an error when parsing JSON response from the embedding model", e);
         }
-        return transcription.text();
+        return response.data().get(0).embedding();
+    }
+
+    private String parseTranscription(String body) {
+        return OpenAiProtocol.parseTranscription(objectMapper, body);
+    }
+
+    private long estimateTokens(Conversation conversation) {
+        return Math.min(conversation.tokens(), maxContextTokens) + completionTokens;
     }
 }
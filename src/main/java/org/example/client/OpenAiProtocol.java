@@ -0,0 +1,134 @@
+package org.example.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.example.dto.GptResponse;
+import org.example.dto.Transcription;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Requests and responses of the OpenAI HTTP API, shared by {@link OpenAiClient} and
+ * {@link LocalModelClient}, whose servers speak the same API.
+ */
+final class OpenAiProtocol {
+
+    private OpenAiProtocol() {
+    }
+
+    // local servers usually need no key
+    static HttpRequest.Builder post(String url, String apiKey, Duration timeout, String contentType) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(timeout)
+                .header(HttpHeaders.CONTENT_TYPE, contentType);
+        if (apiKey != null && !apiKey.isBlank()) {
+            builder.header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey);
+        }
+        return builder;
+    }
+
+    static HttpRequest.Builder postJson(String url, String apiKey, Duration timeout, byte[] body) {
+        return post(url, apiKey, timeout, MediaType.APPLICATION_JSON_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+    }
+
+    // an error body is read whole, so the status is reported and a throttled stream retried
+    static HttpResponse.BodyHandler<String> streamHandler(ObjectMapper objectMapper, Consumer<String> onDelta) {
+        return info -> info.statusCode() >= 400
+                ? HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8)
+                : new CompletionStreamSubscriber(objectMapper, onDelta).bodySubscriber();
+    }
+
+    // the limiter retries throttled and failed calls, only the outcome of the last attempt reaches the caller;
+    // every attempt times out when the deadline passes at the latest, and an attempt cut short by the deadline
+    // fails as cancelled rather than timed out, so the limiter does not take it for a congested server; no
+    // attempt is started once the deadline has passed
+    static CompletableFuture<String> send(HttpClient httpClient, HttpUsage usage, OpenAiRateLimiter rateLimiter,
+                                          long tokens, HttpRequest request,
+                                          HttpResponse.BodyHandler<String> handler, Deadline deadline) {
+        return rateLimiter.execute(tokens, deadline, () -> {
+                    if (deadline.isExpired()) {
+                        return CompletableFuture.failedFuture(Deadline.exceeded());
+                    }
+                    usage.acquire();
+                    return deadline.bind(httpClient.sendAsync(withinDeadline(request, deadline), handler))
+                            .whenComplete((response, e) -> {
+                                usage.release();
+                                if (e != null || response.statusCode() >= 400) {
+                                    usage.failed();
+                                }
+                            })
+                            .exceptionallyCompose(e -> CompletableFuture.failedFuture(
+                                    deadline.isExpired() && isTimeout(e) ? Deadline.exceeded() : e));
+                })
+                .thenApply(response -> {
+                    if (response.statusCode() >= 400) {
+                        throw statusException(response.statusCode(), response.headers(), response.body());
+                    }
+                    return response.body();
+                });
+    }
+
+    private static HttpRequest withinDeadline(HttpRequest request, Deadline deadline) {
+        if (deadline == Deadline.NONE) {
+            return request;
+        }
+        return HttpRequest.newBuilder(request, (name, value) -> true)
+                .timeout(deadline.remaining(request.timeout().orElse(null)))
+                .build();
+    }
+
+    private static boolean isTimeout(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause()
+                : failure;
+        return cause instanceof HttpTimeoutException;
+    }
+
+    static String parseChatResponse(ObjectMapper objectMapper, String body) {
+        GptResponse responseBody;
+        try {
+            responseBody = objectMapper.readValue(body, GptResponse.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("There's an error when parsing JSON response from GPT", e);
+        }
+        return responseBody.getChoices().get(0).getMessage().getContent();
+    }
+
+    static String parseTranscription(ObjectMapper objectMapper, String body) {
+        Transcription transcription;
+        try {
+            transcription = objectMapper.readValue(body, Transcription.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("There was an error when converting JSON response to DTO", e);
+        }
+        return transcription.text();
+    }
+
+    // the exceptions Spring's HTTP clients raise for an error status, with the status, headers and body
+    private static RuntimeException statusException(int statusCode, java.net.http.HttpHeaders responseHeaders,
+                                                    String responseBody) {
+        HttpStatusCode status = HttpStatusCode.valueOf(statusCode);
+        HttpHeaders headers = new HttpHeaders();
+        responseHeaders.map().forEach(headers::addAll);
+        byte[] body = responseBody == null ? null : responseBody.getBytes(StandardCharsets.UTF_8);
+        if (status.is4xxClientError()) {
+            return HttpClientErrorException.create(status, "", headers, body, StandardCharsets.UTF_8);
+        }
+        return HttpServerErrorException.create(status, "", headers, body, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,337 @@
+package org.example.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the calls to one OpenAI endpoint within its quota. A call waits, without holding a thread,
+ * until two token buckets allow it, one for requests and one for tokens per minute. Both start from
+ * the configured quota and follow the {@code x-ratelimit-*} headers of every response. On top of
+ * that the number of concurrent calls is limited AIMD style: every success raises the limit by
+ * {@code 1/limit}, a 429, 503 or timeout halves it. Responses with 429 or 5xx are retried with
+ * jittered exponential backoff, waiting at least as long as {@code retry-after} asks. A call whose
+ * deadline passes while it waits leaves the queue without taking anything from the buckets.
+ */
+public class OpenAiRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenAiRateLimiter.class);
+
+    private static final long MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final String endpoint;
+    private final int maxConcurrency;
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final TokenBucket requests;
+    private final TokenBucket tokens;
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private double concurrencyLimit;
+    private int inFlight;
+    private long lastDecrease;
+    private boolean drainScheduled;
+
+    public OpenAiRateLimiter(String endpoint,
+                             long requestsPerMinute,
+                             long tokensPerMinute,
+                             int initialConcurrency,
+                             int maxConcurrency,
+                             int maxAttempts,
+                             Duration initialBackoff,
+                             Duration maxBackoff) {
+        this.endpoint = endpoint;
+        this.maxConcurrency = maxConcurrency;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffNanos = initialBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+        long now = System.nanoTime();
+        this.requests = new TokenBucket(requestsPerMinute, now);
+        this.tokens = new TokenBucket(tokensPerMinute, now);
+        this.concurrencyLimit = Math.min(initialConcurrency, maxConcurrency);
+        this.lastDecrease = now;
+    }
+
+    /**
+     * Runs {@code call} once the limits allow a request of {@code tokenCount} tokens and retries
+     * it while the endpoint answers 429 or 5xx. The future completes with the last response, so
+     * the caller still sees the status of a call that kept failing.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> execute(long tokenCount,
+                                                          Supplier<CompletableFuture<HttpResponse<T>>> call) {
+        return execute(tokenCount, Deadline.NONE, call);
+    }
+
+    /**
+     * Like {@link #execute(long, Supplier)}, but gives up waiting for the limits once the deadline
+     * has passed, failing with the {@link java.util.concurrent.CancellationException} of a
+     * cancelled call.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> execute(long tokenCount, Deadline deadline,
+                                                          Supplier<CompletableFuture<HttpResponse<T>>> call) {
+        return attempt(tokenCount, deadline, call, 1);
+    }
+
+    public String endpoint() {
+        return endpoint;
+    }
+
+    public synchronized int concurrencyLimit() {
+        return (int) concurrencyLimit;
+    }
+
+    public synchronized int waiting() {
+        return waiters.size();
+    }
+
+    public long retries() {
+        return retries.sum();
+    }
+
+    public long throttled() {
+        return throttled.sum();
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> attempt(long tokenCount, Deadline deadline,
+                                                           Supplier<CompletableFuture<HttpResponse<T>>> call,
+                                                           int attempt) {
+        return acquire(tokenCount, deadline)
+                .thenCompose(granted -> {
+                    CompletableFuture<HttpResponse<T>> response;
+                    try {
+                        response = call.get();
+                    } catch (RuntimeException e) {
+                        release(granted, null, e);
+                        throw e;
+                    }
+                    return response.whenComplete((result, e) -> release(granted, result, e));
+                })
+                .handle((response, e) -> {
+                    if (e == null && attempt < maxAttempts && isRetryable(response.statusCode())) {
+                        retries.increment();
+                        long delay = backoff(attempt, response.headers());
+                        logger.warn("{} endpoint answered {}, retrying in {} ms (attempt {} of {})", endpoint,
+                                response.statusCode(), TimeUnit.NANOSECONDS.toMillis(delay), attempt + 1, maxAttempts);
+                        return CompletableFuture
+                                .runAsync(() -> {}, CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS))
+                                .thenCompose(ignored -> attempt(tokenCount, deadline, call, attempt + 1));
+                    }
+                    return e == null
+                            ? CompletableFuture.completedFuture(response)
+                            : CompletableFuture.<HttpResponse<T>>failedFuture(e);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private CompletableFuture<Long> acquire(long tokenCount, Deadline deadline) {
+        Waiter waiter = new Waiter(tokenCount, new CompletableFuture<>());
+        synchronized (this) {
+            waiters.add(waiter);
+        }
+        // a waiter cancelled by its deadline gives way to the ones behind it before its caller learns of it
+        CompletableFuture<Long> granted = deadline.bind(waiter.granted()).whenComplete((time, e) -> {
+            if (e != null) {
+                synchronized (this) {
+                    waiters.remove(waiter);
+                }
+                drain();
+            }
+        });
+        drain();
+        return granted;
+    }
+
+    // grants waiting calls in order as far as the limits allow, the futures are completed outside the lock
+    private void drain() {
+        List<Waiter> granted = new ArrayList<>();
+        long wait = 0;
+        synchronized (this) {
+            long now = System.nanoTime();
+            requests.refill(now);
+            tokens.refill(now);
+            while (!waiters.isEmpty() && inFlight < (int) concurrencyLimit) {
+                Waiter next = waiters.peek();
+                if (next.granted().isDone()) {
+                    // cancelled, about to be removed
+                    waiters.poll();
+                    continue;
+                }
+                wait = Math.max(requests.nanosUntil(1), tokens.nanosUntil(next.tokens()));
+                if (wait > 0) {
+                    break;
+                }
+                requests.take(1);
+                tokens.take(next.tokens());
+                inFlight++;
+                granted.add(waiters.poll());
+            }
+            if (wait > 0 && !drainScheduled) {
+                drainScheduled = true;
+            } else {
+                wait = 0;
+            }
+        }
+        if (wait > 0) {
+            CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS).execute(() -> {
+                synchronized (this) {
+                    drainScheduled = false;
+                }
+                drain();
+            });
+        }
+        long now = System.nanoTime();
+        boolean returned = false;
+        for (Waiter waiter : granted) {
+            if (!waiter.granted().complete(now)) {
+                // cancelled just now, the slot and the quota it took go back
+                synchronized (this) {
+                    inFlight--;
+                    requests.give(1);
+                    tokens.give(waiter.tokens());
+                }
+                returned = true;
+            }
+        }
+        if (returned) {
+            drain();
+        }
+    }
+
+    private void release(long granted, HttpResponse<?> response, Throwable failure) {
+        synchronized (this) {
+            inFlight--;
+            if (response != null) {
+                // what was refilled until now is settled first, the remaining quota counts from here on
+                long now = System.nanoTime();
+                requests.refill(now);
+                tokens.refill(now);
+                HttpHeaders headers = response.headers();
+                requests.sync(header(headers, "x-ratelimit-limit-requests"),
+                        header(headers, "x-ratelimit-remaining-requests"));
+                tokens.sync(header(headers, "x-ratelimit-limit-tokens"),
+                        header(headers, "x-ratelimit-remaining-tokens"));
+            }
+            int status = response == null ? 0 : response.statusCode();
+            if (status == 429) {
+                throttled.increment();
+            }
+            if (status == 429 || status == 503 || isTimeout(failure)) {
+                // calls started before the last decrease saw the same congestion, one halving is enough
+                if (granted > lastDecrease) {
+                    concurrencyLimit = Math.max(1, concurrencyLimit / 2);
+                    lastDecrease = System.nanoTime();
+                }
+            } else if (failure == null && status < 500) {
+                concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1 / concurrencyLimit);
+            }
+        }
+        drain();
+    }
+
+    private long backoff(int attempt, HttpHeaders headers) {
+        long ceiling = Math.min(maxBackoffNanos, initialBackoffNanos << Math.min(attempt - 1, 20));
+        long jittered = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        return Math.max(jittered, retryAfter(headers));
+    }
+
+    private static long retryAfter(HttpHeaders headers) {
+        long millis = header(headers, "retry-after-ms");
+        if (millis >= 0) {
+            return TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+        long seconds = header(headers, "retry-after");
+        return seconds >= 0 ? TimeUnit.SECONDS.toNanos(seconds) : 0;
+    }
+
+    private static boolean isRetryable(int status) {
+        return status == 429 || status >= 500;
+    }
+
+    private static boolean isTimeout(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause()
+                : failure;
+        return cause instanceof HttpTimeoutException;
+    }
+
+    // -1 when the header is missing or not a number, retry-after may also be an HTTP date
+    private static long header(HttpHeaders headers, String name) {
+        try {
+            OptionalLong value = headers.firstValueAsLong(name);
+            return value.orElse(-1);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private record Waiter(long tokens, CompletableFuture<Long> granted) {}
+
+    /**
+     * A per-minute quota refilled continuously. A capacity of zero means no limit; a call larger
+     * than the whole capacity is let through once the bucket is full.
+     */
+    private static final class TokenBucket {
+        private double capacity;
+        private double available;
+        private long lastRefill;
+
+        private TokenBucket(long perMinute, long now) {
+            this.capacity = perMinute;
+            this.available = perMinute;
+            this.lastRefill = now;
+        }
+
+        private void refill(long now) {
+            available = Math.min(capacity, available + (now - lastRefill) * capacity / MINUTE_NANOS);
+            lastRefill = now;
+        }
+
+        private long nanosUntil(long amount) {
+            double needed = Math.min(amount, capacity);
+            if (capacity <= 0 || available >= needed) {
+                return 0;
+            }
+            return (long) Math.ceil((needed - available) * MINUTE_NANOS / capacity);
+        }
+
+        private void take(long amount) {
+            if (capacity > 0) {
+                available -= Math.min(amount, capacity);
+            }
+        }
+
+        private void give(long amount) {
+            if (capacity > 0) {
+                available = Math.min(capacity, available + Math.min(amount, capacity));
+            }
+        }
+
+        // the endpoint knows the quota better than the configuration, and counts calls of other clients too
+        private void sync(long limit, long remaining) {
+            if (limit > 0) {
+                capacity = limit;
+            }
+            if (remaining >= 0 && capacity > 0) {
+                available = Math.min(available, remaining);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.example.client;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Caches chat completions in front of the engine {@link ModelRouter} picks for the prompt type.
+ * Entries are keyed by a SHA-256 hash of model, system role and prompt, evicted by Caffeine's W-TinyLFU policy once
+ * {@code openai.cache.max-entries} is reached, and expire after the time configured for their
+ * {@link PromptType}; a type with a zero time is never cached. Concurrent misses for the same key
+ * share a single upstream call.
+ */
+@Component
+public class PromptCache {
+
+    private final ModelRouter engines;
+    private final String systemRole;
+    private final Map<PromptType, Duration> ttls = new EnumMap<>(PromptType.class);
+    private final AsyncCache<Key, String> responses;
+
+    public PromptCache(ModelRouter engines,
+                       @Value("${openai.api.chat.system_role}") String systemRole,
+                       @Value("${openai.cache.max-entries:1000}") long maxEntries,
+                       @Value("${openai.cache.ttl.reading:1h}") Duration readingTtl,
+                       @Value("${openai.cache.ttl.question:10m}") Duration questionTtl,
+                       @Value("${openai.cache.ttl.feedback:0s}") Duration feedbackTtl) {
+        this.engines = engines;
+        this.systemRole = systemRole;
+        ttls.put(PromptType.READING, readingTtl);
+        ttls.put(PromptType.QUESTION, questionTtl);
+        ttls.put(PromptType.FEEDBACK, feedbackTtl);
+        this.responses = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new Expiry<Key, String>() {
+                    @Override
+                    public long expireAfterCreate(Key key, String value, long currentTime) {
+                        return ttls.get(key.type()).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Key key, String value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(Key key, String value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+    }
+
+    public CompletableFuture<String> promptModel(PromptType type, String prompt) {
+        return promptModel(type, prompt, Deadline.NONE);
+    }
+
+    /**
+     * Like {@link #promptModel(PromptType, String)}, but the caller's future is cancelled when
+     * {@code deadline} passes. A cached call is shared with other callers and left to finish, only
+     * the caller's copy of it is cancelled.
+     */
+    public CompletableFuture<String> promptModel(PromptType type, String prompt, Deadline deadline) {
+        ChatEngine engine = engines.chat(type);
+        if (ttls.get(type).isZero()) {
+            return engine.promptModelAsync(prompt, deadline);
+        }
+        CompletableFuture<String> shared = responses.get(new Key(type, hash(engine.model(), prompt)),
+                (key, executor) -> engine.promptModelAsync(prompt));
+        return deadline == Deadline.NONE ? shared : deadline.bind(shared.copy());
+    }
+
+    public CacheStats stats() {
+        return responses.synchronous().stats();
+    }
+
+    public long size() {
+        return responses.synchronous().estimatedSize();
+    }
+
+    private String hash(String model, String prompt) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        // separators keep "ab" + "c" and "a" + "bc" apart
+        digest.update(model.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(systemRole.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(prompt.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private record Key(PromptType type, String hash) {}
+}
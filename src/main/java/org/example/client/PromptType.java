@@ -0,0 +1,11 @@
+package org.example.client;
+
+/**
+ * Kinds of prompts sent to the chat model. Responses to each kind are cached for their own time,
+ * see {@link PromptCache}.
+ */
+public enum PromptType {
+    READING,
+    QUESTION,
+    FEEDBACK
+}
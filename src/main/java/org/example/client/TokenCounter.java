@@ -0,0 +1,42 @@
+package org.example.client;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts tokens locally with the BPE encoding of the chat model, so prompts can be kept within a
+ * budget before they are sent. Models the encoding registry does not know are counted with
+ * {@code o200k_base}, the encoding of the GPT-4o family.
+ */
+@Component
+public class TokenCounter {
+
+    // every message is framed by a few tokens on top of its content, the reply by three more
+    static final int TOKENS_PER_MESSAGE = 4;
+    static final int TOKENS_PER_REPLY = 3;
+
+    private final Encoding encoding;
+    // the instructions are a handful of constants, counted once
+    private final Map<String, Integer> instructions = new ConcurrentHashMap<>();
+
+    public TokenCounter(@Value("${openai.api.chat.model}") String chatModel) {
+        EncodingRegistry registry = Encodings.newLazyEncodingRegistry();
+        this.encoding = registry.getEncodingForModel(chatModel)
+                .orElseGet(() -> registry.getEncoding(EncodingType.O200K_BASE));
+    }
+
+    public int count(String text) {
+        return text == null ? 0 : encoding.countTokens(text);
+    }
+
+    int countInstruction(String text) {
+        return instructions.computeIfAbsent(text, this::count);
+    }
+}
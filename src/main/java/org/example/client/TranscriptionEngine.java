@@ -0,0 +1,17 @@
+package org.example.client;
+
+import org.example.dto.VoiceNote;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A speech-to-text model, remote or on a local server.
+ */
+public interface TranscriptionEngine {
+
+    CompletableFuture<String> transcribeAsync(VoiceNote audio, Deadline deadline);
+
+    default CompletableFuture<String> transcribeAsync(VoiceNote audio) {
+        return transcribeAsync(audio, Deadline.NONE);
+    }
+}
@@ -0,0 +1,60 @@
+package org.example.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.example.telegram.Bot;
+import org.example.telegram.RecentUpdates;
+
+/**
+ * Receives the updates other nodes forward to this one as the owner of their chats. A node forwards
+ * again when the owner did not answer in time, so updates seen before are acknowledged without
+ * processing them twice.
+ */
+@RestController
+@ConditionalOnProperty(name = "bot.cluster.enabled", havingValue = "true")
+public class ClusterController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterController.class);
+
+    private final Bot bot;
+    private final ClusterRouter clusterRouter;
+    private final RecentUpdates recentUpdates;
+
+    public ClusterController(Bot bot,
+                             ClusterRouter clusterRouter,
+                             @Value("${bot.cluster.dedup-window:10000}") int dedupWindow) {
+        this.bot = bot;
+        this.clusterRouter = clusterRouter;
+        this.recentUpdates = new RecentUpdates(dedupWindow);
+    }
+
+    @PostMapping(ClusterRouter.FORWARD_PATH)
+    public ResponseEntity<Void> receive(@RequestHeader(value = ClusterRouter.CLUSTER_TOKEN_HEADER, required = false) String token,
+                                        @RequestBody Update update) {
+        if (!clusterRouter.isAuthorized(token)) {
+            logger.warn("Rejected a forwarded update without a valid cluster token");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        Integer updateId = update.getUpdateId();
+        if (updateId != null && !recentUpdates.add(updateId)) {
+            logger.info("Ignoring update {} forwarded again", updateId);
+            return ResponseEntity.ok().build();
+        }
+        if (!bot.offerForwardedUpdate(update)) {
+            if (updateId != null) {
+                recentUpdates.remove(updateId);
+            }
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        }
+        return ResponseEntity.ok().build();
+    }
+}
@@ -0,0 +1,245 @@
+package org.example.cluster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Decides which node of the cluster owns a chat. Sessions live in the memory of one node, so all
+ * updates of a chat have to be processed there: chat ids are mapped to nodes by a {@link HashRing}
+ * and an update that arrives elsewhere is forwarded to its owner over HTTP. Members are the static
+ * {@code bot.cluster.nodes} or, when {@code bot.cluster.members-file} is set, the node URLs listed
+ * in that file one per line, re-read whenever it changes. Without {@code bot.cluster.enabled}
+ * every chat is local.
+ * <p>
+ * An owner that is busy, answering 429 or not answering in time, is asked again after a backoff,
+ * up to {@code bot.cluster.forward-attempts} times. Only an owner that cannot be connected to at
+ * all counts as {@linkplain #isUnreachable unreachable}: its chats may then be processed
+ * elsewhere, with sessions of their own that the owner does not know about once it is back.
+ */
+@Component
+public class ClusterRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterRouter.class);
+
+    static final String CLUSTER_TOKEN_HEADER = "X-Cluster-Token";
+    static final String FORWARD_PATH = "/cluster/updates";
+
+    private final boolean enabled;
+    private final String self;
+    private final Path membersFile;
+    private final int virtualNodes;
+    private final byte[] secret;
+    private final Duration forwardTimeout;
+    private final int forwardAttempts;
+    private final long forwardBackoffMillis;
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient;
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder forwardFailures = new LongAdder();
+    private ScheduledExecutorService reloader;
+    private FileTime membersModified;
+    private volatile HashRing ring;
+
+    public ClusterRouter(@Value("${bot.cluster.enabled:false}") boolean enabled,
+                         @Value("${bot.cluster.self:}") String self,
+                         @Value("${bot.cluster.nodes:}") List<String> nodes,
+                         @Value("${bot.cluster.members-file:}") String membersFile,
+                         @Value("${bot.cluster.virtual-nodes:128}") int virtualNodes,
+                         @Value("${bot.cluster.reload-interval:10s}") Duration reloadInterval,
+                         @Value("${bot.cluster.secret:}") String secret,
+                         @Value("${bot.cluster.forward-timeout:5s}") Duration forwardTimeout,
+                         @Value("${bot.cluster.forward-attempts:3}") int forwardAttempts,
+                         @Value("${bot.cluster.forward-backoff:500ms}") Duration forwardBackoff,
+                         ObjectMapper objectMapper) {
+        this.enabled = enabled;
+        this.self = normalize(self);
+        this.membersFile = membersFile.isBlank() ? null : Path.of(membersFile);
+        this.virtualNodes = virtualNodes;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.forwardTimeout = forwardTimeout;
+        this.forwardAttempts = forwardAttempts;
+        this.forwardBackoffMillis = forwardBackoff.toMillis();
+        this.objectMapper = objectMapper;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(forwardTimeout)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        if (!enabled) {
+            return;
+        }
+        if (this.self.isEmpty() || secret.isBlank()) {
+            throw new IllegalStateException("bot.cluster.self and bot.cluster.secret must be set in a cluster");
+        }
+        if (this.membersFile == null) {
+            useMembers(nodes);
+        } else {
+            reload();
+            long period = reloadInterval.toMillis();
+            reloader = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("cluster-members").daemon().factory());
+            reloader.scheduleWithFixedDelay(this::reload, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public boolean isLocal(Long chatId) {
+        return !enabled || self.equals(ring.owner(chatId.toString()));
+    }
+
+    /**
+     * Hands the update to the node owning its chat. The future fails when the owner cannot be
+     * reached or does not take the update; the caller may process it itself only in the first case.
+     */
+    public CompletableFuture<Void> forward(Update update) {
+        String owner = ring.owner(update.getMessage().getChatId().toString());
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(update);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Could not serialize the update", e));
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(owner + FORWARD_PATH))
+                .timeout(forwardTimeout)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .header(CLUSTER_TOKEN_HEADER, new String(secret, StandardCharsets.UTF_8))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        return send(owner, request, 1).whenComplete((ignored, e) -> {
+            if (e != null) {
+                forwardFailures.increment();
+            }
+        });
+    }
+
+    /**
+     * Whether a failed {@link #forward} never reached the owner. Otherwise the owner is up and may
+     * hold the session of the chat, so the update must not be processed anywhere else.
+     */
+    public static boolean isUnreachable(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause()
+                : failure;
+        return cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException;
+    }
+
+    // the owner drops updates it has seen, so an attempt that timed out after all can be repeated
+    private CompletableFuture<Void> send(String owner, HttpRequest request, int attempt) {
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, e) -> {
+                    boolean busy = e == null ? response.statusCode() == 429 : isResponseTimeout(e);
+                    if (busy && attempt < forwardAttempts) {
+                        long delay = forwardBackoffMillis << (attempt - 1);
+                        logger.warn("{} is busy, forwarding again in {} ms (attempt {} of {})", owner, delay,
+                                attempt + 1, forwardAttempts);
+                        return CompletableFuture
+                                .runAsync(() -> {}, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                                .thenCompose(ignored -> send(owner, request, attempt + 1));
+                    }
+                    if (e != null) {
+                        return CompletableFuture.<Void>failedFuture(e);
+                    }
+                    if (response.statusCode() != 200) {
+                        return CompletableFuture.<Void>failedFuture(new IllegalStateException(
+                                owner + " answered the forwarded update with " + response.statusCode()));
+                    }
+                    forwarded.increment();
+                    return CompletableFuture.<Void>completedFuture(null);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private static boolean isResponseTimeout(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause()
+                : failure;
+        return cause instanceof HttpTimeoutException && !(cause instanceof HttpConnectTimeoutException);
+    }
+
+    public boolean isAuthorized(String token) {
+        return token != null && MessageDigest.isEqual(secret, token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public List<String> members() {
+        return enabled ? ring.nodes() : List.of(self);
+    }
+
+    public long forwarded() {
+        return forwarded.sum();
+    }
+
+    public long forwardFailures() {
+        return forwardFailures.sum();
+    }
+
+    void reload() {
+        try {
+            FileTime modified = Files.getLastModifiedTime(membersFile);
+            if (modified.equals(membersModified)) {
+                return;
+            }
+            List<String> members = Files.readAllLines(membersFile).stream()
+                    .map(String::strip)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .toList();
+            useMembers(members);
+            membersModified = modified;
+        } catch (IOException | RuntimeException e) {
+            if (ring == null) {
+                throw new IllegalStateException("Could not read the cluster members from " + membersFile, e);
+            }
+            // keep the current members, a file being rewritten is read again next time
+            logger.error("Could not read the cluster members from {}", membersFile, e);
+        }
+    }
+
+    private void useMembers(List<String> members) {
+        List<String> nodes = members.stream().map(ClusterRouter::normalize).distinct().sorted().toList();
+        if (!nodes.contains(self)) {
+            logger.warn("This node {} is not a cluster member and will own no chats", self);
+        }
+        ring = new HashRing(nodes, virtualNodes);
+        logger.info("Cluster members: {}", nodes);
+    }
+
+    private static String normalize(String node) {
+        String trimmed = node.strip();
+        return trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.example.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.example.audio.SilenceTrimmer;
+import org.example.cluster.ClusterRouter;
+import org.example.client.HttpUsage;
+import org.example.client.OpenAiRateLimiter;
+import org.example.client.PromptCache;
+import org.example.repository.DiscussionRepository;
+import org.example.repository.InMemoryDiscussionRepository;
+import org.example.service.QuestionPool;
+import org.example.service.RecommendationCache;
+import org.example.telegram.TelegramSender;
+import org.example.telegram.UpdateDispatcher;
+
+import java.util.List;
+
+/**
+ * Publishes the counters the components keep themselves. They are read when the registry is
+ * scraped, so none of the hot paths pays for the meters.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder sessionMetrics(DiscussionRepository discussionRepository,
+                                      InMemoryDiscussionRepository sessions) {
+        return registry -> {
+            Gauge.builder("bot.sessions.live", discussionRepository, DiscussionRepository::liveSessions)
+                    .description("Recommendation sessions currently in progress")
+                    .register(registry);
+            FunctionCounter.builder("bot.sessions", sessions, InMemoryDiscussionRepository::expiredSessions)
+                    .description("Recommendation sessions by what happened to them")
+                    .tag("outcome", "expired")
+                    .register(registry);
+            FunctionCounter.builder("bot.sessions", sessions, InMemoryDiscussionRepository::evictedSessions)
+                    .description("Recommendation sessions by what happened to them")
+                    .tag("outcome", "evicted")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder dispatcherMetrics(UpdateDispatcher dispatcher) {
+        return registry -> {
+            Gauge.builder("bot.updates.in-flight", dispatcher, UpdateDispatcher::inFlight)
+                    .description("Updates being processed")
+                    .register(registry);
+            FunctionCounter.builder("bot.updates.dropped", dispatcher, UpdateDispatcher::dropped)
+                    .description("Updates dropped because their chat had too many waiting")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder clusterMetrics(ClusterRouter clusterRouter) {
+        return registry -> {
+            Gauge.builder("bot.cluster.members", clusterRouter, router -> router.members().size())
+                    .register(registry);
+            FunctionCounter.builder("bot.cluster.forwarded", clusterRouter, ClusterRouter::forwarded)
+                    .tag("outcome", "success")
+                    .register(registry);
+            FunctionCounter.builder("bot.cluster.forwarded", clusterRouter, ClusterRouter::forwardFailures)
+                    .tag("outcome", "error")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder senderMetrics(TelegramSender sender) {
+        return registry -> {
+            Gauge.builder("bot.sender.queued", sender, TelegramSender::queued)
+                    .description("Calls to Telegram waiting to be sent or in flight")
+                    .register(registry);
+            FunctionCounter.builder("bot.sender.throttled", sender, TelegramSender::throttled)
+                    .description("Calls Telegram answered with 429")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder httpUsageMetrics(List<HttpUsage> usages) {
+        return registry -> usages.forEach(usage -> {
+            Gauge.builder("openai.http.in-flight", usage, HttpUsage::inFlight)
+                    .tag("endpoint", usage.endpoint())
+                    .register(registry);
+            Gauge.builder("openai.http.in-flight.peak", usage, HttpUsage::peakInFlight)
+                    .tag("endpoint", usage.endpoint())
+                    .register(registry);
+            FunctionCounter.builder("openai.http.requests", usage, HttpUsage::requests)
+                    .tag("endpoint", usage.endpoint())
+                    .register(registry);
+            FunctionCounter.builder("openai.http.failures", usage, HttpUsage::failures)
+                    .tag("endpoint", usage.endpoint())
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    public MeterBinder rateLimiterMetrics(List<OpenAiRateLimiter> rateLimiters) {
+        return registry -> rateLimiters.forEach(rateLimiter -> {
+            Gauge.builder("openai.limiter.concurrency", rateLimiter, OpenAiRateLimiter::concurrencyLimit)
+                    .description("Concurrent calls currently allowed by the adaptive limit")
+                    .tag("endpoint", rateLimiter.endpoint())
+                    .register(registry);
+            Gauge.builder("openai.limiter.waiting", rateLimiter, OpenAiRateLimiter::waiting)
+                    .description("Calls waiting for the rate or concurrency limit")
+                    .tag("endpoint", rateLimiter.endpoint())
+                    .register(registry);
+            FunctionCounter.builder("openai.limiter.retries", rateLimiter, OpenAiRateLimiter::retries)
+                    .tag("endpoint", rateLimiter.endpoint())
+                    .register(registry);
+            FunctionCounter.builder("openai.limiter.throttled", rateLimiter, OpenAiRateLimiter::throttled)
+                    .description("Responses with status 429")
+                    .tag("endpoint", rateLimiter.endpoint())
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    public MeterBinder promptCacheMetrics(PromptCache promptCache) {
+        return registry -> {
+            Gauge.builder("openai.cache.size", promptCache, PromptCache::size)
+                    .register(registry);
+            FunctionCounter.builder("openai.cache.requests", promptCache, cache -> cache.stats().hitCount())
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("openai.cache.requests", promptCache, cache -> cache.stats().missCount())
+                    .tag("result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("openai.cache.evictions", promptCache, cache -> cache.stats().evictionCount())
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder questionPoolMetrics(QuestionPool questionPool) {
+        return registry -> {
+            FunctionCounter.builder("book.question-pool.served", questionPool, QuestionPool::hits)
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("book.question-pool.served", questionPool, QuestionPool::fallbacks)
+                    .tag("result", "fallback")
+                    .register(registry);
+            FunctionCounter.builder("book.question-pool.generated", questionPool, QuestionPool::generated)
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder recommendationCacheMetrics(RecommendationCache recommendationCache) {
+        return registry -> {
+            Gauge.builder("book.recommendation-cache.size", recommendationCache, RecommendationCache::size)
+                    .register(registry);
+            FunctionCounter.builder("book.recommendation-cache.requests", recommendationCache, RecommendationCache::hits)
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("book.recommendation-cache.requests", recommendationCache, RecommendationCache::misses)
+                    .tag("result", "miss")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder silenceTrimmerMetrics(SilenceTrimmer silenceTrimmer) {
+        return registry -> {
+            FunctionCounter.builder("bot.voice.trimmed.seconds", silenceTrimmer, SilenceTrimmer::trimmedSeconds)
+                    .description("Silence left out of voice notes before transcription")
+                    .register(registry);
+            FunctionCounter.builder("bot.voice.trimmed.bytes", silenceTrimmer, SilenceTrimmer::trimmedBytes)
+                    .register(registry);
+        };
+    }
+}
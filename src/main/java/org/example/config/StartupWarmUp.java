@@ -0,0 +1,79 @@
+package org.example.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.example.client.OpenAiClient;
+import org.example.client.TokenCounter;
+import org.example.service.QuestionPool;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gets the application ready for its first updates before the bot is registered with Telegram:
+ * the connections to OpenAI are opened, the tokenizer is loaded and the first
+ * {@code bot.startup.prefetch-questions} questions are rephrased. A step that fails or outlasts
+ * {@code bot.startup.warm-up-timeout} only costs the first users some latency, so the bot is
+ * registered regardless.
+ */
+@Component
+public class StartupWarmUp {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupWarmUp.class);
+
+    private final OpenAiClient openAiClient;
+    private final TokenCounter tokenCounter;
+    private final QuestionPool questionPool;
+    private final ApplicationEventPublisher publisher;
+    private final boolean enabled;
+    private final Duration timeout;
+    private final int prefetchQuestions;
+
+    public StartupWarmUp(OpenAiClient openAiClient,
+                         TokenCounter tokenCounter,
+                         QuestionPool questionPool,
+                         ApplicationEventPublisher publisher,
+                         @Value("${bot.startup.warm-up:true}") boolean enabled,
+                         @Value("${bot.startup.warm-up-timeout:10s}") Duration timeout,
+                         @Value("${bot.startup.prefetch-questions:5}") int prefetchQuestions) {
+        this.openAiClient = openAiClient;
+        this.tokenCounter = tokenCounter;
+        this.questionPool = questionPool;
+        this.publisher = publisher;
+        this.enabled = enabled;
+        this.timeout = timeout;
+        this.prefetchQuestions = prefetchQuestions;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp(ApplicationReadyEvent event) {
+        logger.info("Context ready in {} ms", event.getTimeTaken().toMillis());
+        if (!enabled) {
+            publisher.publishEvent(new WarmedUpEvent(this));
+            return;
+        }
+        long start = System.nanoTime();
+        // waits on the startup thread, so a failed registration still fails the startup
+        CompletableFuture.allOf(
+                        step("connections", openAiClient.warmUp()),
+                        step("tokenizer", CompletableFuture.runAsync(() -> tokenCounter.count("warm-up"))),
+                        step("questions", questionPool.prefetch(prefetchQuestions)))
+                .completeOnTimeout(null, timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .join();
+        logger.info("Warmed up in {} ms", Duration.ofNanos(System.nanoTime() - start).toMillis());
+        publisher.publishEvent(new WarmedUpEvent(this));
+    }
+
+    private static CompletableFuture<Void> step(String name, CompletableFuture<Void> step) {
+        return step.exceptionally(e -> {
+            logger.warn("Warm-up of the {} failed", name, e);
+            return null;
+        });
+    }
+}
@@ -1,5 +1,7 @@
 package org.example.config;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
@@ -10,10 +12,23 @@ import org.example.telegram.Bot;
 @Configuration
 public class TelegramConfig {
 
+    // registering a long polling bot deletes the webhook, so in webhook mode it is not registered at all
     @Bean
-    public TelegramBotsApi telegramBotsApi(Bot bot) throws TelegramApiException {
-        TelegramBotsApi telegramBotsApi = new TelegramBotsApi(DefaultBotSession.class);
-        telegramBotsApi.registerBot(bot);
-        return telegramBotsApi;
+    @ConditionalOnProperty(name = "bot.mode", havingValue = "polling", matchIfMissing = true)
+    public TelegramBotsApi telegramBotsApi() throws TelegramApiException {
+        return new TelegramBotsApi(DefaultBotSession.class);
+    }
+
+    // polling starts with the registration, so it waits until the application is warmed up
+    @Bean
+    @ConditionalOnProperty(name = "bot.mode", havingValue = "polling", matchIfMissing = true)
+    public ApplicationListener<WarmedUpEvent> pollingRegistration(TelegramBotsApi telegramBotsApi, Bot bot) {
+        return event -> {
+            try {
+                telegramBotsApi.registerBot(bot);
+            } catch (TelegramApiException e) {
+                throw new IllegalStateException("Could not register the bot", e);
+            }
+        };
     }
 }
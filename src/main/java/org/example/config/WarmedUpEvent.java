@@ -0,0 +1,14 @@
+package org.example.config;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published once the application is ready for its first updates, the bot is registered with
+ * Telegram only then.
+ */
+public class WarmedUpEvent extends ApplicationEvent {
+
+    public WarmedUpEvent(Object source) {
+        super(source);
+    }
+}
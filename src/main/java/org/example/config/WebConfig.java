@@ -2,16 +2,106 @@ package org.example.config;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.client.RestTemplate;
+import org.example.client.HttpUsage;
+import org.example.client.OpenAiRateLimiter;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP clients for the OpenAI endpoints. Each endpoint gets a JDK {@link HttpClient} of its own,
+ * which negotiates HTTP/2 and otherwise keeps HTTP/1.1 connections alive, so requests reuse
+ * connections instead of paying a TLS handshake each. Connect and read timeouts are configured per
+ * endpoint because a transcription upload legitimately takes much longer than a chat completion.
+ * The endpoints have separate quotas, so each also gets a rate limiter with a budget of its own.
+ * A local model server is a further endpoint, limited only in concurrency.
+ */
 @Configuration
 public class WebConfig {
 
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public HttpUsage chatHttpUsage() {
+        return new HttpUsage("chat");
+    }
+
+    @Bean
+    public HttpUsage transcriptionHttpUsage() {
+        return new HttpUsage("transcription");
+    }
+
+    @Bean
+    public HttpUsage localHttpUsage() {
+        return new HttpUsage("local");
+    }
+
+    @Bean
+    public OpenAiRateLimiter chatRateLimiter(
+            @Value("${openai.limits.chat.requests-per-minute:500}") long requestsPerMinute,
+            @Value("${openai.limits.chat.tokens-per-minute:30000}") long tokensPerMinute,
+            @Value("${openai.limits.chat.initial-concurrency:8}") int initialConcurrency,
+            @Value("${openai.limits.chat.max-concurrency:64}") int maxConcurrency,
+            @Value("${openai.retry.max-attempts:4}") int maxAttempts,
+            @Value("${openai.retry.initial-backoff:500ms}") Duration initialBackoff,
+            @Value("${openai.retry.max-backoff:20s}") Duration maxBackoff) {
+        return new OpenAiRateLimiter("chat", requestsPerMinute, tokensPerMinute, initialConcurrency,
+                maxConcurrency, maxAttempts, initialBackoff, maxBackoff);
+    }
+
+    @Bean
+    public OpenAiRateLimiter transcriptionRateLimiter(
+            @Value("${openai.limits.transcription.requests-per-minute:50}") long requestsPerMinute,
+            @Value("${openai.limits.transcription.initial-concurrency:4}") int initialConcurrency,
+            @Value("${openai.limits.transcription.max-concurrency:16}") int maxConcurrency,
+            @Value("${openai.retry.max-attempts:4}") int maxAttempts,
+            @Value("${openai.retry.initial-backoff:500ms}") Duration initialBackoff,
+            @Value("${openai.retry.max-backoff:20s}") Duration maxBackoff) {
+        // transcriptions are limited by requests only
+        return new OpenAiRateLimiter("transcription", requestsPerMinute, 0, initialConcurrency,
+                maxConcurrency, maxAttempts, initialBackoff, maxBackoff);
+    }
+
+    @Bean
+    public OpenAiRateLimiter embeddingRateLimiter(
+            @Value("${openai.limits.embedding.requests-per-minute:500}") long requestsPerMinute,
+            @Value("${openai.limits.embedding.tokens-per-minute:1000000}") long tokensPerMinute,
+            @Value("${openai.limits.embedding.initial-concurrency:4}") int initialConcurrency,
+            @Value("${openai.limits.embedding.max-concurrency:16}") int maxConcurrency,
+            @Value("${openai.retry.max-attempts:4}") int maxAttempts,
+            @Value("${openai.retry.initial-backoff:500ms}") Duration initialBackoff,
+            @Value("${openai.retry.max-backoff:20s}") Duration maxBackoff) {
+        return new OpenAiRateLimiter("embedding", requestsPerMinute, tokensPerMinute, initialConcurrency,
+                maxConcurrency, maxAttempts, initialBackoff, maxBackoff);
+    }
+
+    @Bean
+    public OpenAiRateLimiter localRateLimiter(
+            @Value("${openai.local.max-concurrency:4}") int maxConcurrency,
+            @Value("${openai.retry.max-attempts:4}") int maxAttempts,
+            @Value("${openai.retry.initial-backoff:500ms}") Duration initialBackoff,
+            @Value("${openai.retry.max-backoff:20s}") Duration maxBackoff) {
+        // a local server has slots rather than quotas
+        return new OpenAiRateLimiter("local", 0, 0, maxConcurrency, maxConcurrency, maxAttempts,
+                initialBackoff, maxBackoff);
+    }
+
+    @Bean
+    public HttpClient chatHttpClient(@Value("${openai.api.chat.connect-timeout:5s}") Duration connectTimeout) {
+        return httpClient(connectTimeout);
+    }
+
+    @Bean
+    public HttpClient transcriptionHttpClient(
+            @Value("${openai.api.transcription.connect-timeout:5s}") Duration connectTimeout) {
+        return httpClient(connectTimeout);
+    }
+
+    @Bean
+    public HttpClient localHttpClient(@Value("${openai.local.connect-timeout:1s}") Duration connectTimeout) {
+        return httpClient(connectTimeout);
     }
 
     @Bean
@@ -20,4 +110,12 @@ public class WebConfig {
         objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         return objectMapper;
     }
-}
\ No newline at end of file
+
+    private static HttpClient httpClient(Duration connectTimeout) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+}
@@ -0,0 +1,3 @@
+package org.example.dto;
+
+public record EmbeddingRequest(String model, String input) {}
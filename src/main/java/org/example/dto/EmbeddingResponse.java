@@ -0,0 +1,8 @@
+package org.example.dto;
+
+import java.util.List;
+
+public record EmbeddingResponse(List<Embedding> data) {
+
+    public record Embedding(float[] embedding) {}
+}
@@ -12,6 +12,8 @@ public class GptResponse {
     @Data
     public static class Choice {
         private Message message;
+        // set instead of message in the chunks of a streamed completion
+        private Message delta;
     }
 
     @Data
@@ -0,0 +1,47 @@
+package org.example.dto;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Audio of a voice message, held in memory or, when it is too large for that, in a spill file
+ * that is deleted on {@link #close()}.
+ */
+public record VoiceNote(String fileName, byte[] content, Path spillFile) implements AutoCloseable {
+
+    public static VoiceNote inMemory(String fileName, byte[] content) {
+        return new VoiceNote(fileName, content, null);
+    }
+
+    public static VoiceNote spilled(String fileName, Path spillFile) {
+        return new VoiceNote(fileName, null, spillFile);
+    }
+
+    public boolean isInMemory() {
+        return content != null;
+    }
+
+    public long size() {
+        if (isInMemory()) {
+            return content.length;
+        }
+        try {
+            return Files.size(spillFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Voice spill file is not readable", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (spillFile != null) {
+            try {
+                Files.deleteIfExists(spillFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Voice spill file could not be deleted", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.example.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Timers for the stages an update passes through and counters for the sessions. Every stage is
+ * recorded as {@code bot.stage} tagged with the stage and its outcome, with a percentile histogram
+ * so p50/p99 latencies can be computed per stage from the Prometheus buckets.
+ */
+@Component
+public class PipelineMetrics {
+
+    public enum Stage {
+        GET_FILE, DOWNLOAD, TRANSCRIPTION, CHAT, EMBEDDING, SEND_MESSAGE, EDIT_MESSAGE;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    private final MeterRegistry registry;
+    private final Counter sessionsStarted;
+    private final Counter sessionsFinished;
+    private final Counter sessionsErrored;
+
+    public PipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.sessionsStarted = sessions(registry, "started");
+        this.sessionsFinished = sessions(registry, "finished");
+        this.sessionsErrored = sessions(registry, "errored");
+    }
+
+    /**
+     * Times an asynchronous stage from the call until its future completes. A call that throws
+     * instead of returning a future is recorded as failed too.
+     */
+    public <T, E extends Exception> CompletableFuture<T> time(Stage stage, Call<CompletableFuture<T>, E> call) throws E {
+        Timer.Sample sample = Timer.start(registry);
+        CompletableFuture<T> result;
+        try {
+            result = call.call();
+        } catch (Exception | Error e) {
+            sample.stop(timer(stage, "error"));
+            throw e;
+        }
+        return result.whenComplete((value, e) -> sample.stop(timer(stage, e == null ? "success" : "error")));
+    }
+
+    /**
+     * Times a stage that blocks the calling thread.
+     */
+    public <T, E extends Exception> T record(Stage stage, Call<T, E> call) throws E {
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = "error";
+        try {
+            T value = call.call();
+            outcome = "success";
+            return value;
+        } finally {
+            sample.stop(timer(stage, outcome));
+        }
+    }
+
+    public void sessionStarted() {
+        sessionsStarted.increment();
+    }
+
+    public void sessionFinished() {
+        sessionsFinished.increment();
+    }
+
+    public void sessionErrored() {
+        sessionsErrored.increment();
+    }
+
+    // the registry returns the already registered timer for a known name and tags
+    private Timer timer(Stage stage, String outcome) {
+        return Timer.builder("bot.stage")
+                .description("Time spent in one stage of processing an update")
+                .tag("stage", stage.tag)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(5))
+                .maximumExpectedValue(Duration.ofMinutes(2))
+                .register(registry);
+    }
+
+    private static Counter sessions(MeterRegistry registry, String outcome) {
+        return Counter.builder("bot.sessions")
+                .description("Recommendation sessions by what happened to them")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+}
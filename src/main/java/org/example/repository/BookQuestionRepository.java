@@ -1,64 +1,255 @@
 package org.example.repository;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * The baseline questions of the interview, read from {@code book.questions.location} and re-read
+ * when the file changes. Questions are drawn per chat without replacement, so nobody is asked the
+ * same question twice in one interview, and weighted: by the weight given in the file and by how
+ * many words the answers to the question had in earlier interviews, so questions people have
+ * something to say about come up more often.
+ */
 @Repository
 public class BookQuestionRepository {
-    private final List<String> questions = List.of(
-        "What genres do you usually enjoy reading?",
-        "Are you in the mood for fiction or non-fiction?",
-        "Do you prefer fast-paced thrillers or more reflective, character-driven stories?",
-        "Would you like a book that offers escapism or one that reflects real-life issues?",
-        "Are you looking for a light-hearted read or something more serious?",
-        "Do you enjoy classic literature or modern writing styles?",
-        "Are you open to exploring genres you haven't read before?",
-        "What’s your favorite book of all time, and why?",
-        "Do you prefer standalone novels or a series?",
-        "How important is character development to you in a story?",
-        "Do you enjoy books with complex plot twists?",
-        "Are you interested in books that explore historical events?",
-        "Would you like recommendations that include diverse voices and cultures?",
-        "Do you enjoy books that incorporate elements of fantasy or magic realism?",
-        "Are you interested in books that challenge your perspective?",
-        "How long do you typically like your books to be?",
-        "Do you have a preference for narrative style, such as first-person or third-person perspectives?",
-        "Do you prefer books with a strong romantic subplot?",
-        "Are you in the mood for a mystery or detective story?",
-        "Do you enjoy speculative fiction, like dystopian or utopian novels?",
-        "Would you like a recommendation for a book that has been critically acclaimed?",
-        "Are you interested in books that blend genres, such as romance with fantasy or mystery with science fiction?",
-        "Do you enjoy humorous or satirical books?",
-        "How do you feel about experimental writing styles?",
-        "Are you looking for a book that provides deep philosophical insights?",
-        "Do you enjoy memoirs or autobiographies?",
-        "Would you prefer a book that is fast-paced or one that is slow and contemplative?",
-        "Are you interested in books that focus on personal growth or self-help themes?",
-        "Do you enjoy literature that explores complex family dynamics?",
-        "Would you like to read a book that offers social or political commentary?",
-        "How important is the setting in a book for you (e.g., historical, futuristic, real-world)?",
-        "Are you interested in reading books that offer diverse cultural perspectives?",
-        "Do you have a favorite author whose work you admire?",
-        "Are you open to reading translated works from other languages?",
-        "Do you prefer a narrative that is plot-driven or character-driven?",
-        "Would you like to try a book that’s been popular on bestseller lists?",
-        "Do you enjoy books with multiple viewpoints or narrators?",
-        "Are you interested in literature that addresses contemporary issues?",
-        "How much does the writing style influence your enjoyment of a book?",
-        "Do you prefer a story that is emotionally moving or intellectually stimulating?",
-        "Would you enjoy a book that incorporates humor even when dealing with serious topics?",
-        "Do you like books that build suspense gradually or those with immediate action?",
-        "Are you interested in books that explore the human condition in depth?",
-        "Would you prefer books with a clear resolution or those that leave some questions unanswered?",
-        "How do you feel about reading books with non-linear narratives?",
-        "Do you enjoy richly descriptive language and immersive settings?",
-        "Are you looking for a recommendation that suits a particular mood or moment in your life?",
-        "Would you be interested in a book that has a strong underlying theme or moral lesson?",
-        "Do you enjoy books that incorporate elements of mythology or folklore?",
-        "How important is originality to you in a book recommendation?"
-    );
-
-    public String getRandomQuestion () {
-        return questions.get((int) (Math.random() * questions.size()));
+
+    private static final Logger logger = LoggerFactory.getLogger(BookQuestionRepository.class);
+
+    // answers are assumed to be this long until a question has been answered, then averaged
+    static final double PRIOR_ANSWER_WORDS = 20;
+    private static final double ANSWER_WORDS_SMOOTHING = 0.1;
+    // keeps any question from being drawn all the time or never
+    private static final double MIN_INFORMATIVENESS = 0.25;
+    private static final double MAX_INFORMATIVENESS = 4;
+
+    private final Resource location;
+    private final Map<String, Double> answerWords = new ConcurrentHashMap<>();
+    private final Cache<String, Sampling> samplings;
+    private volatile List<WeightedQuestion> questions;
+    private long modified;
+    private ScheduledExecutorService reloader;
+
+    public BookQuestionRepository(@Value("${book.questions.location:classpath:questions.txt}") Resource location,
+                                  @Value("${book.questions.reload-interval:30s}") Duration reloadInterval,
+                                  @Value("${book.session.ttl:30m}") Duration sessionTtl,
+                                  @Value("${book.session.max-sessions:100000}") long maxSessions) {
+        this.location = location;
+        this.samplings = Caffeine.newBuilder()
+                .expireAfterAccess(sessionTtl)
+                .maximumSize(maxSessions)
+                .build();
+        reload();
+        if (location.isFile() && !reloadInterval.isZero()) {
+            long period = reloadInterval.toMillis();
+            reloader = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("question-reload").daemon().factory());
+            reloader.scheduleWithFixedDelay(this::reload, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public List<String> getQuestions() {
+        return questions.stream().map(WeightedQuestion::text).toList();
+    }
+
+    /**
+     * Starts drawing questions for a new interview of the chat, all questions are available again.
+     */
+    public void startSession(String chatId) {
+        samplings.put(chatId, new Sampling());
+    }
+
+    /**
+     * Ends the chat's interview and returns the baseline questions that were answered, in order.
+     * The list is empty if the interview was started before a restart or has expired meanwhile.
+     */
+    public List<String> finishSession(String chatId) {
+        Sampling sampling = samplings.asMap().remove(chatId);
+        if (sampling == null) {
+            return List.of();
+        }
+        synchronized (sampling) {
+            return List.copyOf(sampling.answered);
+        }
+    }
+
+    /**
+     * Draws the next question of the chat's interview. Until it is marked as asked, the same
+     * question is returned again, so a question prepared for an answer that never arrived is not
+     * lost. Once every question has been asked the interview starts over, with every question but
+     * the one asked last, so the same question does not come twice in a row.
+     */
+    public String nextQuestion(String chatId) {
+        Sampling sampling = samplings.get(chatId, id -> new Sampling());
+        synchronized (sampling) {
+            if (sampling.pending == null) {
+                sampling.pending = draw(questions, sampling.asked, sampling.last);
+                sampling.asked.add(sampling.pending);
+                sampling.last = sampling.pending;
+            }
+            return sampling.pending;
+        }
+    }
+
+    /**
+     * Marks the drawn question as asked, the next answer of the chat is attributed to it.
+     */
+    public void questionAsked(String chatId) {
+        Sampling sampling = samplings.getIfPresent(chatId);
+        if (sampling == null) {
+            return;
+        }
+        synchronized (sampling) {
+            if (sampling.pending != null) {
+                sampling.current = sampling.pending;
+                sampling.pending = null;
+            }
+        }
+    }
+
+    public void answerReceived(String chatId, String answer) {
+        Sampling sampling = samplings.getIfPresent(chatId);
+        if (sampling == null) {
+            return;
+        }
+        String question;
+        synchronized (sampling) {
+            question = sampling.current;
+            sampling.current = null;
+            if (question != null) {
+                sampling.answered.add(question);
+            }
+        }
+        if (question != null && answer != null) {
+            double words = answer.strip().split("\\s+").length;
+            answerWords.merge(question, PRIOR_ANSWER_WORDS + ANSWER_WORDS_SMOOTHING * (words - PRIOR_ANSWER_WORDS),
+                    (average, ignored) -> average + ANSWER_WORDS_SMOOTHING * (words - average));
+        }
+    }
+
+    double weight(WeightedQuestion question) {
+        double informativeness = answerWords.getOrDefault(question.text(), PRIOR_ANSWER_WORDS) / PRIOR_ANSWER_WORDS;
+        return question.weight() * Math.min(Math.max(informativeness, MIN_INFORMATIVENESS), MAX_INFORMATIVENESS);
+    }
+
+    private String draw(List<WeightedQuestion> candidates, Set<String> asked, String last) {
+        double total = 0;
+        for (WeightedQuestion question : candidates) {
+            if (!asked.contains(question.text())) {
+                total += weight(question);
+            }
+        }
+        if (total == 0) {
+            asked.clear();
+            if (last != null && candidates.size() > 1) {
+                asked.add(last);
+            }
+            return draw(candidates, asked, null);
+        }
+        double target = ThreadLocalRandom.current().nextDouble(total);
+        WeightedQuestion drawn = null;
+        for (WeightedQuestion question : candidates) {
+            if (asked.contains(question.text())) {
+                continue;
+            }
+            drawn = question;
+            target -= weight(question);
+            if (target < 0) {
+                return question.text();
+            }
+        }
+        // rounding may leave a sliver of the total
+        return drawn.text();
+    }
+
+    void reload() {
+        try {
+            long lastModified = location.isFile() ? location.lastModified() : 0;
+            if (questions != null && lastModified == modified) {
+                return;
+            }
+            List<WeightedQuestion> loaded = parse(location.getContentAsString(StandardCharsets.UTF_8));
+            if (loaded.isEmpty()) {
+                throw new IllegalStateException("No questions in " + location);
+            }
+            questions = loaded;
+            modified = lastModified;
+            logger.info("Loaded {} questions from {}", loaded.size(), location);
+        } catch (IOException | RuntimeException e) {
+            if (questions == null) {
+                throw new IllegalStateException("Could not read the questions from " + location, e);
+            }
+            // keep the current questions, a file being rewritten is read again next time
+            logger.error("Could not read the questions from {}", location, e);
+        }
+    }
+
+    static List<WeightedQuestion> parse(String content) {
+        List<WeightedQuestion> parsed = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (String line : content.split("\\R")) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            double weight = 1;
+            int separator = line.indexOf('|');
+            Double prefix = separator > 0 ? weight(line.substring(0, separator)) : null;
+            if (prefix != null) {
+                weight = prefix;
+                line = line.substring(separator + 1).strip();
+            }
+            if (weight > 0 && seen.add(line)) {
+                parsed.add(new WeightedQuestion(line, weight));
+            }
+        }
+        return List.copyOf(parsed);
+    }
+
+    // a question may contain '|' itself, only a number before it is a weight
+    private static Double weight(String prefix) {
+        try {
+            double weight = Double.parseDouble(prefix.strip());
+            return Double.isFinite(weight) ? weight : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
+    }
+
+    record WeightedQuestion(String text, double weight) {}
+
+    // guarded by its own monitor, only the chat's updates touch it
+    private static class Sampling {
+        private final Set<String> asked = new HashSet<>();
+        private final List<String> answered = new ArrayList<>();
+        private String pending;
+        private String current;
+        private String last;
     }
 }
@@ -1,39 +1,28 @@
 package org.example.repository;
 
-import org.springframework.stereotype.Repository;
 import org.example.dto.Question;
 
-import java.util.*;
-
-@Repository
-public class DiscussionRepository {
-
-    private final Map<String, Deque<Question>> userQuestions = new HashMap<>();
-
-    public void addQuestion(String userName, String question) {
-        Question dto = new Question();
-        dto.setQuestion(question);
-        userQuestions.computeIfAbsent(userName, k -> new LinkedList<>()).add(dto);
-    }
-
-    public void addAnswer(String userName, String answer) {
-        if (userQuestions.containsKey(userName)) {
-            Question question = userQuestions.get(userName).peekLast();
-            if (question != null) {
-                question.setAnswer(answer);
-            } else {
-                throw new IllegalStateException("There is no book query awaiting an answer for user " + userName);
-            }
-        } else {
-            throw new IllegalStateException("There is no active book recommendation session for user " + userName);
-        }
-    }
-
-    public Deque<Question> finishInterview(String userName) {
-        return userQuestions.remove(userName);
-    }
-
-    public int getUserQuestions(String userName) {
-        return userQuestions.get(userName).size();
-    }
-}
\ No newline at end of file
+import java.util.List;
+
+/**
+ * Interview sessions keyed by chat id. Sessions live in memory in
+ * {@link InMemoryDiscussionRepository}; setting {@code book.session.store=journal} additionally
+ * persists them with {@link JournaledDiscussionRepository} so they survive a restart.
+ */
+public interface DiscussionRepository {
+
+    void addQuestion(String chatId, String question);
+
+    /**
+     * Records the answer to the last asked question.
+     *
+     * @return the number of questions asked so far in the session
+     */
+    int addAnswer(String chatId, String answer);
+
+    List<Question> finishInterview(String chatId);
+
+    int getUserQuestions(String chatId);
+
+    int liveSessions();
+}
@@ -0,0 +1,57 @@
+package org.example.repository;
+
+import org.example.dto.Question;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Questions of one interview, kept in an array sized to {@code book.max-questions}. Mutations are
+ * only made while {@link InMemoryDiscussionRepository} holds the map bin of the session, the count is
+ * volatile so it can be read without taking that lock.
+ */
+class DiscussionSession {
+
+    private Question[] questions;
+    private volatile int size;
+    private volatile long lastAccess = System.nanoTime();
+
+    DiscussionSession(int capacity) {
+        this.questions = new Question[Math.max(capacity, 1)];
+    }
+
+    void touch() {
+        lastAccess = System.nanoTime();
+    }
+
+    long lastAccess() {
+        return lastAccess;
+    }
+
+    boolean idleLongerThan(long ttlNanos, long now) {
+        return now - lastAccess > ttlNanos;
+    }
+
+    void append(Question question) {
+        if (size == questions.length) {
+            questions = Arrays.copyOf(questions, size * 2);
+        }
+        questions[size] = question;
+        size = size + 1;
+    }
+
+    Question last() {
+        int current = size;
+        return current == 0 ? null : questions[current - 1];
+    }
+
+    int size() {
+        return size;
+    }
+
+    // size is read first: its volatile write follows the array writes, so they are all visible
+    List<Question> toList() {
+        int current = size;
+        return List.of(Arrays.copyOf(questions, current));
+    }
+}
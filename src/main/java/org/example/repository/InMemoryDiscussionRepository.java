@@ -0,0 +1,178 @@
+package org.example.repository;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.example.dto.Question;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Interview sessions keyed by chat id. Every operation is a single atomic step on the
+ * {@link ConcurrentHashMap}, which locks only the bin of the session it touches, so concurrent
+ * updates of different chats do not contend with each other.
+ * <p>
+ * Abandoned sessions are removed by a background sweeper: sessions idle for longer than
+ * {@code book.session.ttl} expire, and when more than {@code book.session.max-sessions} are live
+ * the least recently used ones are evicted. Requests never scan the map themselves, they only
+ * trigger an early sweep when a new session pushes the count over the limit.
+ */
+@Repository
+public class InMemoryDiscussionRepository implements DiscussionRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryDiscussionRepository.class);
+
+    private final Map<String, DiscussionSession> userQuestions = new ConcurrentHashMap<>();
+    private final int maxQuestions;
+    private final long ttlNanos;
+    private final int maxSessions;
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("session-sweeper").daemon().factory());
+    private final AtomicBoolean sweepPending = new AtomicBoolean();
+    private final LongAdder expiredSessions = new LongAdder();
+    private final LongAdder evictedSessions = new LongAdder();
+
+    public InMemoryDiscussionRepository(@Value("${book.max-questions}") int maxQuestions,
+                                        @Value("${book.session.ttl:30m}") Duration ttl,
+                                        @Value("${book.session.max-sessions:100000}") int maxSessions,
+                                        @Value("${book.session.sweep-interval:1m}") Duration sweepInterval) {
+        this.maxQuestions = maxQuestions;
+        this.ttlNanos = ttl.toNanos();
+        this.maxSessions = maxSessions;
+        long period = sweepInterval.toMillis();
+        sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void addQuestion(String chatId, String question) {
+        Question dto = new Question();
+        dto.setQuestion(question);
+        boolean[] created = new boolean[1];
+        userQuestions.compute(chatId, (id, session) -> {
+            DiscussionSession current = session;
+            if (current == null) {
+                current = new DiscussionSession(maxQuestions);
+                created[0] = true;
+            }
+            current.append(dto);
+            current.touch();
+            return current;
+        });
+        if (created[0] && userQuestions.size() > maxSessions && sweepPending.compareAndSet(false, true)) {
+            sweeper.execute(this::sweep);
+        }
+    }
+
+    @Override
+    public int addAnswer(String chatId, String answer) {
+        int[] asked = new int[1];
+        DiscussionSession session = userQuestions.computeIfPresent(chatId, (id, current) -> {
+            Question question = current.last();
+            if (question == null) {
+                throw new IllegalStateException("There is no book query awaiting an answer for user " + chatId);
+            }
+            question.setAnswer(answer);
+            current.touch();
+            asked[0] = current.size();
+            return current;
+        });
+        if (session == null) {
+            throw new IllegalStateException("There is no active book recommendation session for user " + chatId);
+        }
+        return asked[0];
+    }
+
+    @Override
+    public List<Question> finishInterview(String chatId) {
+        DiscussionSession session = userQuestions.remove(chatId);
+        return session == null ? List.of() : session.toList();
+    }
+
+    @Override
+    public int getUserQuestions(String chatId) {
+        DiscussionSession session = userQuestions.get(chatId);
+        return session == null ? 0 : session.size();
+    }
+
+    @Override
+    public int liveSessions() {
+        return userQuestions.size();
+    }
+
+    public long expiredSessions() {
+        return expiredSessions.sum();
+    }
+
+    public long evictedSessions() {
+        return evictedSessions.sum();
+    }
+
+    /**
+     * Copies the questions of every live session, used by {@link JournaledDiscussionRepository}
+     * to compact its journal.
+     */
+    Map<String, List<Question>> snapshot() {
+        Map<String, List<Question>> sessions = new HashMap<>();
+        for (String chatId : userQuestions.keySet()) {
+            // copied under the bin lock, so no question or answer is added meanwhile
+            userQuestions.computeIfPresent(chatId, (id, session) -> {
+                sessions.put(id, session.toList());
+                return session;
+            });
+        }
+        return sessions;
+    }
+
+    // sweeps never overlap, two of them would evict for the same excess
+    synchronized void sweep() {
+        sweepPending.set(false);
+        try {
+            long now = System.nanoTime();
+            for (String chatId : userQuestions.keySet()) {
+                // re-checked under the bin lock so a session touched meanwhile survives
+                userQuestions.computeIfPresent(chatId, (id, session) -> {
+                    if (session.idleLongerThan(ttlNanos, now)) {
+                        expiredSessions.increment();
+                        return null;
+                    }
+                    return session;
+                });
+            }
+            int excess = userQuestions.size() - maxSessions;
+            if (excess > 0) {
+                userQuestions.entrySet().stream()
+                        .map(entry -> new Candidate(entry.getKey(), entry.getValue(), entry.getValue().lastAccess()))
+                        .sorted(Comparator.comparingLong(Candidate::lastAccess))
+                        .limit(excess)
+                        .forEach(candidate -> {
+                            if (userQuestions.remove(candidate.chatId(), candidate.session())) {
+                                evictedSessions.increment();
+                            }
+                        });
+            }
+        } catch (RuntimeException e) {
+            // a failed sweep must not cancel the schedule
+            logger.error("Session sweep failed", e);
+        }
+    }
+
+    // access time is captured once so sorting is not disturbed by concurrent touches
+    private record Candidate(String chatId, DiscussionSession session, long lastAccess) {}
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+}
@@ -0,0 +1,164 @@
+package org.example.repository;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.unit.DataSize;
+import org.example.dto.Question;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps sessions in {@link InMemoryDiscussionRepository} and records every change in a
+ * {@link SessionJournal}, which is replayed on startup so a restart does not drop interviews.
+ * <p>
+ * The journal is flushed to disk every {@code book.session.journal.flush-interval} and rewritten
+ * from the live sessions every {@code book.session.journal.compact-interval}, which also drops
+ * sessions the in-memory store has expired or evicted since the last compaction.
+ */
+@Primary
+@Repository
+@ConditionalOnProperty(name = "book.session.store", havingValue = "journal")
+public class JournaledDiscussionRepository implements DiscussionRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(JournaledDiscussionRepository.class);
+
+    private final InMemoryDiscussionRepository sessions;
+    private final SessionJournal journal;
+    // changes hold the read lock so compaction, holding the write lock while it copies the sessions, sees
+    // no change half-applied
+    private final ReadWriteLock compactionLock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("session-journal").daemon().factory());
+
+    public JournaledDiscussionRepository(InMemoryDiscussionRepository sessions,
+                                         @Value("${book.session.journal.path:data/sessions.journal}") String path,
+                                         @Value("${book.session.journal.initial-size:16MB}") DataSize initialSize,
+                                         @Value("${book.session.journal.flush-interval:1s}") Duration flushInterval,
+                                         @Value("${book.session.journal.compact-interval:10m}") Duration compactInterval)
+            throws IOException {
+        this.sessions = sessions;
+        this.journal = new SessionJournal(Path.of(path), (int) initialSize.toBytes());
+        long start = System.nanoTime();
+        int events = journal.replay(this::apply);
+        logger.info("Replayed {} journal events into {} sessions in {} ms", events, sessions.liveSessions(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        compact();
+        maintenance.scheduleWithFixedDelay(this::flush, flushInterval.toMillis(), flushInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        maintenance.scheduleWithFixedDelay(this::compact, compactInterval.toMillis(), compactInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void addQuestion(String chatId, String question) {
+        compactionLock.readLock().lock();
+        try {
+            sessions.addQuestion(chatId, question);
+            journal.append(SessionJournal.QUESTION, chatId, question);
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int addAnswer(String chatId, String answer) {
+        compactionLock.readLock().lock();
+        try {
+            int asked = sessions.addAnswer(chatId, answer);
+            journal.append(SessionJournal.ANSWER, chatId, answer);
+            return asked;
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Question> finishInterview(String chatId) {
+        compactionLock.readLock().lock();
+        try {
+            List<Question> questions = sessions.finishInterview(chatId);
+            if (!questions.isEmpty()) {
+                journal.append(SessionJournal.FINISH, chatId, null);
+            }
+            return questions;
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getUserQuestions(String chatId) {
+        return sessions.getUserQuestions(chatId);
+    }
+
+    @Override
+    public int liveSessions() {
+        return sessions.liveSessions();
+    }
+
+    private void apply(byte type, String chatId, String text) {
+        switch (type) {
+            case SessionJournal.QUESTION -> sessions.addQuestion(chatId, text);
+            case SessionJournal.ANSWER -> {
+                if (sessions.getUserQuestions(chatId) > 0) {
+                    sessions.addAnswer(chatId, text);
+                }
+            }
+            case SessionJournal.FINISH -> sessions.finishInterview(chatId);
+            default -> logger.warn("Skipping unknown journal event type {} for user {}", type, chatId);
+        }
+    }
+
+    private void flush() {
+        try {
+            journal.flush();
+        } catch (RuntimeException e) {
+            logger.error("Session journal flush failed", e);
+        }
+    }
+
+    // the sessions are copied under the write lock, the slow part, writing and forcing the new file, runs
+    // while changes go on, and install() only carries over the records appended meanwhile
+    void compact() {
+        try {
+            Map<String, List<Question>> snapshot;
+            int mark;
+            compactionLock.writeLock().lock();
+            try {
+                snapshot = sessions.snapshot();
+                mark = journal.size();
+            } finally {
+                compactionLock.writeLock().unlock();
+            }
+            journal.install(journal.compact(snapshot), mark);
+            logger.info("Compacted session journal from {} to {} bytes", mark, journal.size());
+        } catch (RuntimeException e) {
+            logger.error("Session journal compaction failed", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        maintenance.shutdownNow();
+        compactionLock.writeLock().lock();
+        try {
+            journal.close();
+        } finally {
+            compactionLock.writeLock().unlock();
+        }
+    }
+}
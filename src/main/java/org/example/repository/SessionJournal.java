@@ -0,0 +1,251 @@
+package org.example.repository;
+
+import org.example.dto.Question;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only log of session events in a memory-mapped file. A record is
+ * {@code [int length][byte type][short id length][id][int text length][text]}; the length prefix is
+ * written last, so a record torn by a crash reads as the end of the journal. The unused tail of the
+ * mapping is zero-filled, which marks the end as well.
+ */
+class SessionJournal implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionJournal.class);
+
+    static final byte QUESTION = 1;
+    static final byte ANSWER = 2;
+    static final byte FINISH = 3;
+
+    private static final int LENGTH_PREFIX = Integer.BYTES;
+    private static final byte[] NO_TEXT = new byte[0];
+
+    @FunctionalInterface
+    interface Listener {
+        void onEvent(byte type, String chatId, String text);
+    }
+
+    private final Path path;
+    private final int minCapacity;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+
+    SessionJournal(Path path, int minCapacity) throws IOException {
+        this.path = path;
+        this.minCapacity = minCapacity;
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(path, CREATE, READ, WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(minCapacity, channel.size()));
+    }
+
+    /**
+     * Feeds every complete record to the listener and positions the journal after the last one. A
+     * record whose fields do not fit its length is corrupt; replay stops before it, so the
+     * sessions recorded up to there survive, and the next append overwrites it.
+     */
+    synchronized int replay(Listener listener) {
+        int offset = 0;
+        int events = 0;
+        while (offset + LENGTH_PREFIX <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            int end = offset + LENGTH_PREFIX + length;
+            if (length < 1 + Short.BYTES + Integer.BYTES || end < 0 || end > buffer.capacity()) {
+                logger.warn("Session journal is corrupt at offset {}, replay stops after {} events", offset, events);
+                break;
+            }
+            int cursor = offset + LENGTH_PREFIX;
+            byte type = buffer.get(cursor);
+            int idLength = buffer.getShort(cursor + 1) & 0xFFFF;
+            cursor += 3 + idLength;
+            int textLength = cursor + Integer.BYTES <= end ? buffer.getInt(cursor) : -1;
+            if (textLength < 0 || cursor + Integer.BYTES + textLength != end) {
+                logger.warn("Session journal is corrupt at offset {}, replay stops after {} events", offset, events);
+                break;
+            }
+            String chatId = read(offset + LENGTH_PREFIX + 3, idLength);
+            String text = read(cursor + Integer.BYTES, textLength);
+            listener.onEvent(type, chatId, text);
+            offset = end;
+            events++;
+        }
+        position = offset;
+        return events;
+    }
+
+    synchronized void append(byte type, String chatId, String text) {
+        byte[] id = chatId.getBytes(UTF_8);
+        byte[] body = text == null ? NO_TEXT : text.getBytes(UTF_8);
+        int needed = recordSize(id, body);
+        if (position + needed > buffer.capacity()) {
+            buffer = grow(channel, buffer, position + needed);
+        }
+        position = write(buffer, position, type, id, body);
+    }
+
+    /**
+     * Writes the minimal set of records that reproduces the given sessions next to the journal and
+     * forces it to disk. It touches only the new file, so appends go on meanwhile; {@link #install}
+     * then carries them over and puts the new file in place.
+     */
+    Compaction compact(Map<String, List<Question>> sessions) {
+        List<Entry> entries = new ArrayList<>();
+        long size = 0;
+        for (Map.Entry<String, List<Question>> session : sessions.entrySet()) {
+            byte[] id = session.getKey().getBytes(UTF_8);
+            for (Question question : session.getValue()) {
+                Entry entry = new Entry(id, question.getQuestion().getBytes(UTF_8),
+                        question.getAnswer() == null ? null : question.getAnswer().getBytes(UTF_8));
+                entries.add(entry);
+                size += entry.size();
+            }
+        }
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        FileChannel target = null;
+        try {
+            target = FileChannel.open(compacted, CREATE, TRUNCATE_EXISTING, READ, WRITE);
+            MappedByteBuffer mapped = target.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(minCapacity, size * 2));
+            int offset = 0;
+            for (Entry entry : entries) {
+                offset = write(mapped, offset, QUESTION, entry.id(), entry.question());
+                if (entry.answer() != null) {
+                    offset = write(mapped, offset, ANSWER, entry.id(), entry.answer());
+                }
+            }
+            mapped.force();
+            return new Compaction(compacted, target, mapped, offset);
+        } catch (IOException e) {
+            closeQuietly(target);
+            throw new UncheckedIOException("There was an error when compacting the session journal", e);
+        }
+    }
+
+    /**
+     * Replaces the journal with the compacted one. The records appended since {@code mark}, the
+     * size of the journal when the compacted sessions were copied, are carried over; they are
+     * usually few, so appends wait only for a short copy.
+     */
+    synchronized void install(Compaction compaction, int mark) {
+        if (!channel.isOpen()) {
+            // closed on shutdown while the compacted file was written, the journal stays as it is
+            closeQuietly(compaction.channel());
+            return;
+        }
+        try {
+            int tail = position - mark;
+            MappedByteBuffer mapped = compaction.buffer();
+            if (compaction.position() + tail > mapped.capacity()) {
+                mapped = grow(compaction.channel(), mapped, compaction.position() + tail);
+            }
+            mapped.put(compaction.position(), buffer, mark, tail);
+            mapped.force();
+            Files.move(compaction.file(), path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel.close();
+            channel = compaction.channel();
+            buffer = mapped;
+            position = compaction.position() + tail;
+        } catch (IOException e) {
+            closeQuietly(compaction.channel());
+            throw new UncheckedIOException("There was an error when compacting the session journal", e);
+        } catch (RuntimeException e) {
+            closeQuietly(compaction.channel());
+            throw e;
+        }
+    }
+
+    synchronized void flush() {
+        buffer.force();
+    }
+
+    synchronized int size() {
+        return position;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private static MappedByteBuffer grow(FileChannel channel, MappedByteBuffer buffer, int required) {
+        long capacity = buffer.capacity();
+        while (capacity < required) {
+            capacity *= 2;
+        }
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Session journal exceeds the 2 GB mapping limit, compact it more often");
+        }
+        try {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("There was an error when growing the session journal", e);
+        }
+    }
+
+    private String read(int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // the compaction has failed already, the journal itself is unchanged
+        }
+    }
+
+    record Compaction(Path file, FileChannel channel, MappedByteBuffer buffer, int position) {}
+
+    private record Entry(byte[] id, byte[] question, byte[] answer) {
+        long size() {
+            return recordSize(id, question) + (answer == null ? 0 : recordSize(id, answer));
+        }
+    }
+
+    private static int recordSize(byte[] id, byte[] body) {
+        return LENGTH_PREFIX + 1 + Short.BYTES + id.length + Integer.BYTES + body.length;
+    }
+
+    private static int write(MappedByteBuffer target, int offset, byte type, byte[] id, byte[] body) {
+        int cursor = offset + LENGTH_PREFIX;
+        target.put(cursor, type);
+        target.putShort(cursor + 1, (short) id.length);
+        target.put(cursor + 3, id);
+        cursor += 3 + id.length;
+        target.putInt(cursor, body.length);
+        target.put(cursor + Integer.BYTES, body);
+        int length = recordSize(id, body) - LENGTH_PREFIX;
+        target.putInt(offset, length);
+        return offset + LENGTH_PREFIX + length;
+    }
+}
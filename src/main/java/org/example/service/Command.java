@@ -2,19 +2,28 @@ package org.example.service;
 
 import lombok.RequiredArgsConstructor;
 import org.telegram.telegrambots.meta.api.objects.Update;
-import org.example.client.OpenAiClient;
+import org.example.client.Deadline;
+import org.example.client.ModelRouter;
 import org.example.repository.DiscussionRepository;
 import org.example.repository.BookQuestionRepository;
 import org.example.telegram.Bot;
 
+import java.util.concurrent.CompletableFuture;
+
 @RequiredArgsConstructor
 public abstract class Command {
 
     protected final BookQuestionRepository bookQuestionRepository;
-    protected final OpenAiClient openAiClient;
+    protected final ModelRouter engines;
     protected final DiscussionRepository discussionRepository;
 
     public abstract boolean isApplicable(Update update);
 
-    public abstract String process(Update update, Bot bot);
+    /**
+     * Starts processing the update and returns the reply once it is ready, or {@code null} when
+     * the command has already replied itself. Implementations compose the asynchronous Telegram
+     * and OpenAI calls instead of blocking on them. Every call is passed the {@code deadline} of
+     * the update, a stage is not started once it has passed.
+     */
+    public abstract CompletableFuture<String> process(Update update, Bot bot, Deadline deadline);
 }
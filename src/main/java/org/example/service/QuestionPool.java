@@ -0,0 +1,224 @@
+package org.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.example.client.ModelRouter;
+import org.example.client.PromptCache;
+import org.example.client.PromptType;
+import org.example.repository.BookQuestionRepository;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Creative rephrasings of the baseline questions, generated ahead of time so asking the next
+ * question does not wait for the model. Every baseline question keeps up to
+ * {@code book.question-pool.size} rephrasings, each served up to {@code book.question-pool.max-uses}
+ * times; once no more than {@code book.question-pool.low-watermark} remain, the question is queued
+ * for a background refill. An empty pool falls back to the baseline question itself. The pool
+ * starts empty apart from the questions {@link #prefetch prefetched} on startup, the rest are
+ * generated as they are first asked.
+ */
+@Component
+public class QuestionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(QuestionPool.class);
+
+    static final String QUESTION_PROMPT = """
+                Here is the baseline question for our book recommendation session: %s
+                Please ask this question creatively by setting up a real-life scenario involving a well-known book or reading platform.
+                For example, imagine you’re working at a renowned bookstore or on an online platform like Goodreads or Amazon,
+                and a customer is looking for their next great read. Frame your question in a friendly, casual tone that invites
+                the customer to share their reading preferences.
+
+                Remember, the actual question should relate directly to the topic provided, but use the scenario to make it engaging.
+
+                Style of communication:
+                Speak like an old friend—warm, relaxed, and to the point. Keep your sentences clear and lively, ensuring the conversation
+                remains interesting without overwhelming the customer with too much text.
+                """;
+
+    private final ModelRouter engines;
+    private final PromptCache promptCache;
+    private final BookQuestionRepository bookQuestionRepository;
+    private final boolean enabled;
+    private final int size;
+    private final int lowWatermark;
+    private final int maxUses;
+    private final int refillConcurrency;
+
+    private final Map<String, Queue<Rephrasing>> rephrasings = new ConcurrentHashMap<>();
+    private final Queue<String> pendingRefills = new ConcurrentLinkedQueue<>();
+    // completed once the refill is done, so a prefetch can wait for one that is already queued
+    private final Map<String, CompletableFuture<Void>> queuedRefills = new ConcurrentHashMap<>();
+    private final AtomicInteger refillWorkers = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder generated = new LongAdder();
+
+    public QuestionPool(ModelRouter engines,
+                        PromptCache promptCache,
+                        BookQuestionRepository bookQuestionRepository,
+                        @Value("${book.question-pool.enabled:true}") boolean enabled,
+                        @Value("${book.question-pool.size:3}") int size,
+                        @Value("${book.question-pool.low-watermark:1}") int lowWatermark,
+                        @Value("${book.question-pool.max-uses:5}") int maxUses,
+                        @Value("${book.question-pool.refill-concurrency:4}") int refillConcurrency) {
+        this.engines = engines;
+        this.promptCache = promptCache;
+        this.bookQuestionRepository = bookQuestionRepository;
+        this.enabled = enabled;
+        this.size = size;
+        this.lowWatermark = lowWatermark;
+        this.maxUses = maxUses;
+        this.refillConcurrency = refillConcurrency;
+    }
+
+    /**
+     * Generates rephrasings of the first {@code count} questions right away instead of in the
+     * background refill, the future completes once they are in the pool. For a question already
+     * queued for a refill it waits for that refill.
+     */
+    public CompletableFuture<Void> prefetch(int count) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.allOf(bookQuestionRepository.getQuestions().stream()
+                .limit(count)
+                .map(this::prefetchOne)
+                .toArray(CompletableFuture[]::new));
+    }
+
+    private CompletableFuture<Void> prefetchOne(String baseQuestion) {
+        CompletableFuture<Void> refill = new CompletableFuture<>();
+        CompletableFuture<Void> queued = queuedRefills.putIfAbsent(baseQuestion, refill);
+        if (queued != null) {
+            return queued;
+        }
+        fill(baseQuestion).whenComplete((ignored, e) -> {
+            queuedRefills.remove(baseQuestion, refill);
+            if (e != null) {
+                refill.completeExceptionally(e);
+            } else {
+                refill.complete(null);
+            }
+        });
+        return refill;
+    }
+
+    /**
+     * Returns a rephrasing of the baseline question. With the pool enabled this never waits for
+     * the model: it serves a pre-generated rephrasing or, if there is none yet, the question itself.
+     * The future is the caller's own, cancelling it does not affect other chats waiting for the
+     * same rephrasing.
+     */
+    public CompletableFuture<String> rephrase(String baseQuestion) {
+        if (!enabled) {
+            // the cache hands out one future to every caller of the same prompt
+            return promptCache.promptModel(PromptType.QUESTION, String.format(QUESTION_PROMPT, baseQuestion)).copy();
+        }
+        Queue<Rephrasing> queue = queue(baseQuestion);
+        Rephrasing rephrasing = queue.poll();
+        if (rephrasing != null && rephrasing.uses.incrementAndGet() < maxUses) {
+            // back to the tail so the rephrasings of a question take turns
+            queue.offer(rephrasing);
+        }
+        if (queue.size() <= lowWatermark) {
+            requestRefill(baseQuestion);
+        }
+        if (rephrasing == null) {
+            fallbacks.increment();
+            return CompletableFuture.completedFuture(baseQuestion);
+        }
+        hits.increment();
+        return CompletableFuture.completedFuture(rephrasing.text);
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long fallbacks() {
+        return fallbacks.sum();
+    }
+
+    public long generated() {
+        return generated.sum();
+    }
+
+    private Queue<Rephrasing> queue(String baseQuestion) {
+        return rephrasings.computeIfAbsent(baseQuestion, question -> new ArrayBlockingQueue<>(size));
+    }
+
+    private void requestRefill(String baseQuestion) {
+        if (queuedRefills.putIfAbsent(baseQuestion, new CompletableFuture<>()) == null) {
+            pendingRefills.add(baseQuestion);
+            startRefillWorkers();
+        }
+    }
+
+    private void startRefillWorkers() {
+        while (!pendingRefills.isEmpty()) {
+            int workers = refillWorkers.get();
+            if (workers >= refillConcurrency) {
+                return;
+            }
+            if (refillWorkers.compareAndSet(workers, workers + 1)) {
+                refillNext();
+            }
+        }
+    }
+
+    private void refillNext() {
+        String baseQuestion = pendingRefills.poll();
+        if (baseQuestion == null) {
+            refillWorkers.decrementAndGet();
+            // a refill may have been queued while this worker was on its way out
+            startRefillWorkers();
+            return;
+        }
+        fill(baseQuestion).whenComplete((ignored, e) -> {
+            if (e != null) {
+                logger.warn("Could not pre-generate a rephrasing of '{}'", baseQuestion, e);
+            }
+            // the failure is logged here already, a prefetch waiting for the refill only needs to know it is over
+            queuedRefills.remove(baseQuestion).complete(null);
+            refillNext();
+        });
+    }
+
+    // bypasses the cache on purpose, each refill has to produce a new rephrasing
+    private CompletableFuture<Void> fill(String baseQuestion) {
+        Queue<Rephrasing> queue = queue(baseQuestion);
+        if (queue.size() >= size) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return engines.chat(PromptType.QUESTION).promptModelAsync(String.format(QUESTION_PROMPT, baseQuestion))
+                .thenCompose(text -> {
+                    generated.increment();
+                    Rephrasing rephrasing = new Rephrasing(text);
+                    while (!queue.offer(rephrasing)) {
+                        // full after all, the oldest rephrasing makes room
+                        queue.poll();
+                    }
+                    return fill(baseQuestion);
+                });
+    }
+
+    private static class Rephrasing {
+        private final String text;
+        private final AtomicInteger uses = new AtomicInteger();
+
+        private Rephrasing(String text) {
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.example.client.ChatEngine;
+import org.example.client.Deadline;
+import org.example.client.OpenAiClient;
+import org.example.dto.Question;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Recommendations of finished interviews, found again by the similarity of the interviews. The
+ * baseline questions of a session are embedded together with their answers and compared with the
+ * profiles seen before; when one lies within {@code book.recommendation-cache.similarity} (cosine)
+ * its recommendation is served instead of generating a new one. The answers alone would not do:
+ * many questions are answered with a plain yes or no, and the same answers to different questions
+ * describe different readers. A recommendation is kept with the model that wrote it and only served
+ * to sessions whose feedback goes to that model, so an answer of the fallback engine does not
+ * stand in for the routed one.
+ * <p>
+ * The embeddings are normalised and kept in one {@code float[]} arena, so a lookup is a flat scan
+ * of dot products over contiguous memory. That is faster than a graph index at the few thousand
+ * profiles {@code book.recommendation-cache.max-entries} allows; once full, the oldest profile
+ * makes room.
+ */
+@Component
+public class RecommendationCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecommendationCache.class);
+
+    private final OpenAiClient openAiClient;
+    private final boolean enabled;
+    private final float similarity;
+    private final int maxEntries;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // sized when the first embedding arrives, the dimensions depend on the model
+    private float[] embeddings;
+    private final String[] recommendations;
+    private final String[] models;
+    private int dimensions;
+    private int size;
+    private int next;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public RecommendationCache(OpenAiClient openAiClient,
+                               @Value("${book.recommendation-cache.enabled:true}") boolean enabled,
+                               @Value("${book.recommendation-cache.similarity:0.92}") float similarity,
+                               @Value("${book.recommendation-cache.max-entries:2000}") int maxEntries) {
+        this.openAiClient = openAiClient;
+        this.enabled = enabled;
+        this.similarity = similarity;
+        this.maxEntries = maxEntries;
+        this.recommendations = new String[maxEntries];
+        this.models = new String[maxEntries];
+    }
+
+    /**
+     * Embeds the session: every answer with the baseline question it was given to, the
+     * rephrasing the user saw differs every time. Without a baseline question for every answer,
+     * say after a restart, the session is not cached. A failed embedding only costs the cache as
+     * well: the profile then has no recommendation and remembers none. The embedding is cancelled
+     * when {@code deadline} passes, like the rest of the update. Only recommendations written by
+     * {@code model} are considered.
+     */
+    public CompletableFuture<Profile> profile(List<Question> questions, List<String> baseQuestions,
+                                              String model, Deadline deadline) {
+        if (!enabled || baseQuestions.size() != questions.size()) {
+            return CompletableFuture.completedFuture(new Profile(null, model));
+        }
+        StringBuilder interview = new StringBuilder();
+        for (int i = 0; i < questions.size(); i++) {
+            interview.append("Q: ").append(baseQuestions.get(i)).append('\n')
+                    .append("A: ").append(questions.get(i).getAnswer()).append('\n');
+        }
+        return openAiClient.embedAsync(interview.toString(), deadline)
+                .thenApply(embedding -> new Profile(normalize(embedding), model))
+                .exceptionally(e -> {
+                    logger.warn("Could not embed the interview, the recommendation is generated", e);
+                    return new Profile(null, model);
+                });
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    String find(float[] embedding, String model) {
+        lock.readLock().lock();
+        try {
+            if (embedding.length != dimensions) {
+                return null;
+            }
+            int best = -1;
+            float bestSimilarity = similarity;
+            for (int i = 0; i < size; i++) {
+                if (!models[i].equals(model)) {
+                    continue;
+                }
+                float candidate = dot(embeddings, i * dimensions, embedding);
+                if (candidate >= bestSimilarity) {
+                    best = i;
+                    bestSimilarity = candidate;
+                }
+            }
+            return best < 0 ? null : recommendations[best];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void put(float[] embedding, String model, String recommendation) {
+        lock.writeLock().lock();
+        try {
+            if (embedding.length != dimensions) {
+                // a different embedding model, the old profiles cannot be compared any more
+                embeddings = new float[maxEntries * embedding.length];
+                dimensions = embedding.length;
+                size = 0;
+                next = 0;
+            }
+            System.arraycopy(embedding, 0, embeddings, next * dimensions, dimensions);
+            recommendations[next] = recommendation;
+            models[next] = model;
+            next = (next + 1) % maxEntries;
+            size = Math.max(size, next == 0 ? maxEntries : next);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // four accumulators break the dependency chain, so the additions overlap in the pipeline
+    static float dot(float[] arena, int offset, float[] vector) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < vector.length; i += 4) {
+            s0 += arena[offset + i] * vector[i];
+            s1 += arena[offset + i + 1] * vector[i + 1];
+            s2 += arena[offset + i + 2] * vector[i + 2];
+            s3 += arena[offset + i + 3] * vector[i + 3];
+        }
+        for (; i < vector.length; i++) {
+            s0 += arena[offset + i] * vector[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    // on unit vectors the dot product is the cosine similarity
+    static float[] normalize(float[] vector) {
+        double squares = 0;
+        for (float value : vector) {
+            squares += value * value;
+        }
+        float norm = (float) Math.sqrt(squares);
+        float[] unit = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            unit[i] = norm == 0 ? 0 : vector[i] / norm;
+        }
+        return unit;
+    }
+
+    /**
+     * The interview of one session, placed among the profiles seen before.
+     */
+    public class Profile {
+        private final float[] embedding;
+        private final String recommendation;
+
+        private Profile(float[] embedding, String model) {
+            this.embedding = embedding;
+            this.recommendation = embedding == null ? null : find(embedding, model);
+            if (embedding != null) {
+                (recommendation != null ? hits : misses).increment();
+            }
+        }
+
+        /**
+         * The recommendation given for a similar profile, or null if there is none.
+         */
+        public String recommendation() {
+            return recommendation;
+        }
+
+        /**
+         * Keeps the recommendation for similar profiles, under the model that wrote it.
+         */
+        public void remember(ChatEngine.Completion recommendation) {
+            if (embedding != null && recommendation.text() != null && !recommendation.text().isBlank()) {
+                put(embedding, recommendation.model(), recommendation.text());
+            }
+        }
+    }
+}
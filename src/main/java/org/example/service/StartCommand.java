@@ -3,11 +3,17 @@ package org.example.service;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
-import org.example.client.OpenAiClient;
+import org.example.client.Deadline;
+import org.example.client.ModelRouter;
+import org.example.client.PromptCache;
+import org.example.client.PromptType;
+import org.example.metrics.PipelineMetrics;
 import org.example.repository.DiscussionRepository;
 import org.example.repository.BookQuestionRepository;
 import org.example.telegram.Bot;
 
+import java.util.concurrent.CompletableFuture;
+
 @Component
 public class StartCommand extends Command {
 
@@ -17,10 +23,17 @@ public class StartCommand extends Command {
         Let's chat like old friends—I’ll keep things relaxed and fun, and if I need a bit more info, I'll ask follow-up questions. My goal is to give you spot-on recommendations without overwhelming you.
         """;
 
+    private final PromptCache promptCache;
+    private final PipelineMetrics metrics;
+
     public StartCommand(BookQuestionRepository bookQuestionRepository,
-                        OpenAiClient openAiClient,
-                        DiscussionRepository discussionRepository) {
-        super(bookQuestionRepository, openAiClient, discussionRepository);
+                        ModelRouter engines,
+                        DiscussionRepository discussionRepository,
+                        PromptCache promptCache,
+                        PipelineMetrics metrics) {
+        super(bookQuestionRepository, engines, discussionRepository);
+        this.promptCache = promptCache;
+        this.metrics = metrics;
     }
 
     public boolean isApplicable(Update update) {
@@ -28,11 +41,19 @@ public class StartCommand extends Command {
         return message.hasText() && "/start".equals(message.getText());
     }
 
-    public String process(Update update, Bot bot) {
-        String userName = update.getMessage().getFrom().getUserName();
-        String question = bookQuestionRepository.getRandomQuestion();
-        discussionRepository.addQuestion(userName, question);
+    public CompletableFuture<String> process(Update update, Bot bot, Deadline deadline) {
+        String chatId = update.getMessage().getChatId().toString();
+        bookQuestionRepository.startSession(chatId);
+        String question = bookQuestionRepository.nextQuestion(chatId);
+        discussionRepository.addQuestion(chatId, question);
+        bookQuestionRepository.questionAsked(chatId);
+        metrics.sessionStarted();
         String prompt = String.format(READING_PROMPT, question);
-        return openAiClient.promptModel(prompt);
+        // the greeting is shared through the cache, the deadline cuts only this reply short and leaves it to finish
+        return promptCache.promptModel(PromptType.READING, prompt, deadline).whenComplete((greeting, e) -> {
+            if (e != null) {
+                metrics.sessionErrored();
+            }
+        });
     }
 }
\ No newline at end of file
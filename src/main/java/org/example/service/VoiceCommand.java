@@ -9,36 +9,37 @@ import org.telegram.telegrambots.meta.api.objects.File;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.Voice;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
-import org.example.client.OpenAiClient;
+import org.example.audio.SilenceTrimmer;
+import org.example.client.Conversation;
+import org.example.client.ChatEngine;
+import org.example.client.Deadline;
+import org.example.client.ModelRouter;
+import org.example.client.PromptType;
 import org.example.dto.Question;
+import org.example.dto.VoiceNote;
+import org.example.metrics.PipelineMetrics;
+import org.example.metrics.PipelineMetrics.Stage;
 import org.example.repository.DiscussionRepository;
 import org.example.repository.BookQuestionRepository;
 import org.example.telegram.Bot;
+import org.example.telegram.StreamingReply;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Deque;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Component
 public class VoiceCommand extends Command {
 
     private static final Logger logger = LoggerFactory.getLogger(VoiceCommand.class);
 
-    private static final String QUESTION_PROMPT = """
-                Here is the baseline question for our book recommendation session: %s
-                Please ask this question creatively by setting up a real-life scenario involving a well-known book or reading platform.
-                For example, imagine you’re working at a renowned bookstore or on an online platform like Goodreads or Amazon,
-                and a customer is looking for their next great read. Frame your question in a friendly, casual tone that invites
-                the customer to share their reading preferences.
-                
-                Remember, the actual question should relate directly to the topic provided, but use the scenario to make it engaging.
-                
-                Style of communication:
-                Speak like an old friend—warm, relaxed, and to the point. Keep your sentences clear and lively, ensuring the conversation
-                remains interesting without overwhelming the customer with too much text.
-                """;
-
     private static final String FEEDBACK_PROMPT = """
                  Analyze the questions asked during this book recommendation session along with the user's responses.
                 Provide personalized feedback on their reading preferences by highlighting what you've learned about their tastes.
@@ -57,13 +58,45 @@ public class VoiceCommand extends Command {
                 Keep it friendly and informal—as if you're chatting with a good friend. Your feedback should be concise, engaging, and easy to read.
             """;
 
+    private static final String FEEDBACK_REQUEST = "That was my last answer. What have you learned about my reading preferences?";
+
+    // Whisper recognises the format by the file extension
+    private static final String VOICE_FILE_NAME = "voice.ogg";
+
     @Value("${book.max-questions}")
     private int maxQuestions;
 
-    public VoiceCommand(OpenAiClient openAiClient,
+    @Value("${bot.voice.max-in-memory:1048576}")
+    private int maxInMemory;
+
+    @Value("${bot.voice.max-duration:5m}")
+    private Duration maxVoiceDuration;
+
+    @Value("${bot.streaming.enabled:true}")
+    private boolean streamFeedback;
+
+    @Value("${bot.streaming.edit-interval:1s}")
+    private Duration editInterval;
+
+    private final QuestionPool questionPool;
+    private final RecommendationCache recommendationCache;
+    private final SilenceTrimmer silenceTrimmer;
+    private final PipelineMetrics metrics;
+    // the Telegram download is a blocking stream, read on virtual threads
+    private final ExecutorService downloads = Executors.newVirtualThreadPerTaskExecutor();
+
+    public VoiceCommand(ModelRouter engines,
                         DiscussionRepository discussionRepository,
-                        BookQuestionRepository bookQuestionRepository) {
-        super(bookQuestionRepository, openAiClient, discussionRepository);
+                        BookQuestionRepository bookQuestionRepository,
+                        QuestionPool questionPool,
+                        RecommendationCache recommendationCache,
+                        SilenceTrimmer silenceTrimmer,
+                        PipelineMetrics metrics) {
+        super(bookQuestionRepository, engines, discussionRepository);
+        this.questionPool = questionPool;
+        this.recommendationCache = recommendationCache;
+        this.silenceTrimmer = silenceTrimmer;
+        this.metrics = metrics;
     }
 
     @Override
@@ -74,101 +107,185 @@ public class VoiceCommand extends Command {
     }
 
     @Override
-    public String process(Update update, Bot bot) {
-        String userName = update.getMessage().getFrom().getUserName();
-        logger.info("Processing voice command for user: {}", userName);
-        
-        // Transcribe the voice message
-        String answer = transcribeVoiceAnswer(update, bot);
-        logger.info("Transcribed answer for user {}: {}", userName, answer);
-        
-        // Attempt to add the answer to the active session
-        try {
-            discussionRepository.addAnswer(userName, answer);
-            logger.info("Answer added for user: {}", userName);
-        } catch (IllegalStateException ex) {
-            logger.error("Error adding answer for user {}: {}", userName, ex.getMessage());
-            // Inform user to start a session
-            return "It seems you haven't started a session yet. Please send /start to begin a book recommendation session.";
+    public CompletableFuture<String> process(Update update, Bot bot, Deadline deadline) {
+        String chatId = update.getMessage().getChatId().toString();
+        logger.info("Processing voice command for user: {}", chatId);
+
+        // Telegram knows the duration, so an overlong note is turned down before it is downloaded
+        Integer duration = update.getMessage().getVoice().getDuration();
+        if (duration != null && duration > maxVoiceDuration.toSeconds()) {
+            logger.info("Voice message of {} s from user {} is too long", duration, chatId);
+            return CompletableFuture.completedFuture(String.format(
+                    "That was a long one! Please keep your answer under %d minutes and send it again.",
+                    Math.max(maxVoiceDuration.toMinutes(), 1)));
         }
-        
-        int currentCount = discussionRepository.getUserQuestions(userName);
-        logger.info("Current question count for user {}: {}", userName, currentCount);
-        
-        if (currentCount == maxQuestions) {
-            logger.info("Maximum questions reached for user {}. Providing feedback.", userName);
-            return provideFeedback(userName);
-        } else {
-            logger.info("Asking next question for user {}.", userName);
-            return askNextQuestion(userName);
+
+        // The next question does not depend on the answer, so unless this answer ends the session
+        // it is prepared while the voice message is downloaded and transcribed
+        int asked = discussionRepository.getUserQuestions(chatId);
+        CompletableFuture<String> nextQuestion = asked > 0 && asked < maxQuestions ? prepareNextQuestion(chatId) : null;
+
+        // Transcribe the voice message
+        return transcribeVoiceAnswer(update, bot, deadline).thenCompose(answer -> {
+            logger.info("Transcribed answer for user {}: {}", chatId, answer);
+            // the user has been asked to send the answer again, it must not be recorded twice
+            deadline.check();
+
+            // Attempt to add the answer to the active session
+            int currentCount;
+            try {
+                currentCount = discussionRepository.addAnswer(chatId, answer);
+                bookQuestionRepository.answerReceived(chatId, answer);
+                logger.info("Answer added for user: {}", chatId);
+            } catch (IllegalStateException ex) {
+                logger.error("Error adding answer for user {}: {}", chatId, ex.getMessage());
+                cancel(nextQuestion);
+                // Inform user to start a session
+                return CompletableFuture.completedFuture(
+                        "It seems you haven't started a session yet. Please send /start to begin a book recommendation session.");
+            }
+
+            logger.info("Current question count for user {}: {}", chatId, currentCount);
+
+            if (currentCount == maxQuestions) {
+                logger.info("Maximum questions reached for user {}. Providing feedback.", chatId);
+                cancel(nextQuestion);
+                return provideFeedback(chatId, bot, deadline);
+            } else {
+                logger.info("Asking next question for user {}.", chatId);
+                return askNextQuestion(chatId, nextQuestion != null ? nextQuestion : prepareNextQuestion(chatId));
+            }
+        }).whenComplete((reply, e) -> {
+            if (e != null) {
+                cancel(nextQuestion);
+                metrics.sessionErrored();
+            }
+        });
+    }
+
+    // the pool hands out a future of its own, a rephrasing shared through the cache is still completed for the others
+    private static void cancel(CompletableFuture<String> speculativeQuestion) {
+        if (speculativeQuestion != null) {
+            speculativeQuestion.cancel(true);
         }
     }
 
-    private String transcribeVoiceAnswer(Update update, Bot bot) {
+    private CompletableFuture<String> transcribeVoiceAnswer(Update update, Bot bot, Deadline deadline) {
         logger.info("Starting transcription process for voice message.");
         Voice voice = update.getMessage().getVoice();
-        String fileId = voice.getFileId();
-        java.io.File audio;
+        GetFile getFileRequest = new GetFile();
+        getFileRequest.setFileId(voice.getFileId());
         try {
-            GetFile getFileRequest = new GetFile();
-            getFileRequest.setFileId(fileId);
-            File file = bot.execute(getFileRequest);
-            logger.info("Retrieved file path: {}", file.getFilePath());
-            audio = bot.downloadFile(file.getFilePath());
-            logger.info("Downloaded audio file: {}", audio.getAbsolutePath());
+            return metrics.time(Stage.GET_FILE, () -> bot.executeAsync(getFileRequest))
+                    .thenComposeAsync(file -> {
+                        deadline.check();
+                        logger.info("Retrieved file path: {}", file.getFilePath());
+                        VoiceNote downloaded = metrics.record(Stage.DOWNLOAD, () -> download(bot, file));
+                        logger.info("Downloaded {} bytes of audio, in memory: {}", downloaded.size(), downloaded.isInMemory());
+                        VoiceNote audio = silenceTrimmer.trim(downloaded);
+                        return engines.transcription().transcribeAsync(audio, deadline)
+                                .whenComplete((transcript, e) -> audio.close());
+                    }, downloads)
+                    .thenApply(transcript -> {
+                        logger.info("Transcription result: {}", transcript);
+                        return transcript;
+                    });
         } catch (TelegramApiException e) {
             logger.error("Error processing Telegram audio", e);
             throw new IllegalStateException("Error processing Telegram audio", e);
         }
-        java.io.File oggFile = renameToOgg(audio);
-        logger.info("Renamed audio file to OGG: {}", oggFile.getAbsolutePath());
-        String transcript = openAiClient.transcribe(oggFile);
-        logger.info("Transcription result: {}", transcript);
-        return transcript;
     }
 
-    private java.io.File renameToOgg(java.io.File tmpFile) {
-        logger.info("Renaming file {} to OGG format.", tmpFile.getName());
-        String fileName = tmpFile.getName();
-        String newFileName = fileName.substring(0, fileName.length() - 4) + ".ogg";
-        Path sourcePath = tmpFile.toPath();
-        Path targetPath = sourcePath.resolveSibling(newFileName);
-        try {
-            Files.move(sourcePath, targetPath);
-            logger.info("File renamed successfully to: {}", targetPath.toString());
-        } catch (IOException e) {
-            logger.error("Error renaming file to .ogg", e);
-            throw new IllegalStateException("Error renaming .tmp audio file to .ogg", e);
+    /**
+     * Reads the voice message into memory. Notes larger than {@code bot.voice.max-in-memory} are
+     * spilled to a temporary file instead, which the caller deletes by closing the note.
+     */
+    private VoiceNote download(Bot bot, File file) {
+        try (InputStream in = bot.downloadFileAsStream(file.getFilePath())) {
+            byte[] head = in.readNBytes(maxInMemory + 1);
+            if (head.length <= maxInMemory) {
+                return VoiceNote.inMemory(VOICE_FILE_NAME, head);
+            }
+            Path spillFile = Files.createTempFile("voice-", ".ogg");
+            try (OutputStream out = Files.newOutputStream(spillFile)) {
+                out.write(head);
+                in.transferTo(out);
+            } catch (IOException e) {
+                Files.deleteIfExists(spillFile);
+                throw e;
+            }
+            return VoiceNote.spilled(VOICE_FILE_NAME, spillFile);
+        } catch (TelegramApiException | IOException e) {
+            logger.error("Error processing Telegram audio", e);
+            throw new IllegalStateException("Error processing Telegram audio", e);
         }
-        return targetPath.toFile();
     }
 
-    private String askNextQuestion(String userName) {
-        String randomQuestion = bookQuestionRepository.getRandomQuestion();
+    private CompletableFuture<String> prepareNextQuestion(String chatId) {
+        String randomQuestion = bookQuestionRepository.nextQuestion(chatId);
         logger.info("Random question retrieved: {}", randomQuestion);
-        String prompt = String.format(QUESTION_PROMPT, randomQuestion);
-        logger.info("Generated prompt: {}", prompt);
-        String question = openAiClient.promptModel(prompt);
-        logger.info("OpenAI response for question: {}", question);
-        discussionRepository.addQuestion(userName, question);
-        logger.info("Question added for user: {}", userName);
-        return question;
+        return questionPool.rephrase(randomQuestion);
     }
 
-    private String provideFeedback(String userName) {
-        StringBuilder feedbackPrompt = new StringBuilder();
-        feedbackPrompt.append(FEEDBACK_PROMPT);
-        Deque<Question> questions = discussionRepository.finishInterview(userName);
-        logger.info("Finishing session for user {}. Total questions answered: {}", userName, questions.size());
-        questions.forEach(question -> {
-            feedbackPrompt.append("Original question: ")
-                .append(question.getQuestion()).append("\n")
-                .append("User's answer: ")
-                .append(question.getAnswer()).append("\n");
+    private CompletableFuture<String> askNextQuestion(String chatId, CompletableFuture<String> nextQuestion) {
+        return nextQuestion.thenApply(question -> {
+            logger.info("OpenAI response for question: {}", question);
+            discussionRepository.addQuestion(chatId, question);
+            bookQuestionRepository.questionAsked(chatId);
+            logger.info("Question added for user: {}", chatId);
+            return question;
         });
-        logger.info("Feedback prompt constructed: {}", feedbackPrompt.toString());
-        String feedback = openAiClient.promptModel(feedbackPrompt.toString());
-        logger.info("Received feedback from OpenAI: {}", feedback);
-        return feedback;
+    }
+
+    private CompletableFuture<String> provideFeedback(String chatId, Bot bot, Deadline deadline) {
+        List<Question> questions = discussionRepository.finishInterview(chatId);
+        List<String> baseQuestions = bookQuestionRepository.finishSession(chatId);
+        logger.info("Finishing session for user {}. Total questions answered: {}", chatId, questions.size());
+        ChatEngine engine = engines.chat(PromptType.FEEDBACK);
+        return recommendationCache.profile(questions, baseQuestions, engine.model(), deadline).thenCompose(profile -> {
+            if (profile.recommendation() != null) {
+                // someone answered much the same before, their feedback is served without asking the model
+                logger.info("Serving the feedback of a similar session to user {}", chatId);
+                metrics.sessionFinished();
+                return CompletableFuture.completedFuture(profile.recommendation());
+            }
+            Conversation feedbackPrompt = feedbackConversation(engine.conversation(), questions);
+            logger.info("Feedback prompt constructed: {} tokens", feedbackPrompt.tokens());
+            if (!streamFeedback) {
+                return engine.completeAsync(feedbackPrompt, deadline).thenApply(feedback -> {
+                    logger.info("Received feedback from {}: {}", feedback.model(), feedback.text());
+                    profile.remember(feedback);
+                    metrics.sessionFinished();
+                    return feedback.text();
+                });
+            }
+            // the feedback is long, so it is shown while it is generated and the command replies itself
+            StreamingReply reply = bot.streamReply(chatId, editInterval);
+            return engine.streamCompletion(feedbackPrompt, reply::append, deadline)
+                    .thenCompose(feedback -> {
+                        logger.info("Received feedback from {}: {}", feedback.model(), feedback.text());
+                        profile.remember(feedback);
+                        return reply.finish(feedback.text());
+                    })
+                    .thenApply(shown -> {
+                        metrics.sessionFinished();
+                        return null;
+                    });
+        });
+    }
+
+    /**
+     * The feedback instructions are the same for every session and go first, so the provider can
+     * cache them; the questions and answers follow as the dialogue they were. A question left
+     * unanswered, say when /start came twice, is skipped: a message without content is rejected.
+     */
+    static Conversation feedbackConversation(Conversation conversation, List<Question> questions) {
+        conversation.system(FEEDBACK_PROMPT);
+        questions.stream()
+                .filter(question -> question.getAnswer() != null)
+                .forEach(question -> conversation
+                        .assistant(question.getQuestion())
+                        .user(question.getAnswer()));
+        return conversation.user(FEEDBACK_REQUEST);
     }
 }
@@ -1,45 +1,160 @@
 package org.example.telegram;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
-import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.example.client.Deadline;
+import org.example.cluster.ClusterRouter;
 import org.example.service.Command;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class Bot extends TelegramLongPollingBot {
+
+    private static final Logger logger = LoggerFactory.getLogger(Bot.class);
+
+    private static final String TIMEOUT_REPLY = "Sorry, that took me too long. Please send it again in a moment.";
+    private static final String BUSY_REPLY = "Sorry, I'm a bit overloaded right now. Please send it again in a moment.";
+
+    private final Duration updateDeadline;
     private final List<Command> commands;
+    private final UpdateDispatcher dispatcher;
+    private final TelegramSender sender;
+    private final ClusterRouter clusterRouter;
+    // the reply being streamed for the update a chat is processing, its updates are processed one at a time
+    private final Map<String, StreamingReply> streaming = new ConcurrentHashMap<>();
 
-    public Bot(@Value("${bot.token}") String token, List<Command> commands) {
-        super(token);
+    public Bot(@Value("${bot.token}") String token,
+               @Value("${bot.max-threads:8}") int maxThreads,
+               @Value("${bot.update-deadline:20s}") Duration updateDeadline,
+               List<Command> commands,
+               UpdateDispatcher dispatcher,
+               TelegramSender sender,
+               ClusterRouter clusterRouter) {
+        super(options(maxThreads), token);
+        this.updateDeadline = updateDeadline;
         this.commands = commands;
+        this.dispatcher = dispatcher;
+        this.sender = sender;
+        this.clusterRouter = clusterRouter;
     }
 
     @Override
-public void onUpdateReceived(Update update) {
-    if (update.hasMessage()) {
-        commands.stream()
+    public void onUpdateReceived(Update update) {
+        if (update.hasMessage()) {
+            dispatcher.dispatch(update.getMessage().getChatId(), () -> route(update));
+        }
+    }
+
+    /**
+     * Accepts an update delivered to the webhook. Returns {@code false} when too many updates are
+     * in flight, so Telegram can be asked to deliver it again.
+     */
+    public boolean offerUpdate(Update update) {
+        return !update.hasMessage() || dispatcher.tryDispatch(update.getMessage().getChatId(), () -> route(update));
+    }
+
+    /**
+     * Accepts an update another node forwarded to this one as the owner of its chat. It is
+     * processed here even if this node's view of the cluster differs, so updates never bounce.
+     */
+    public boolean offerForwardedUpdate(Update update) {
+        return !update.hasMessage() || dispatcher.tryDispatch(update.getMessage().getChatId(), () -> handle(update));
+    }
+
+    // forwarding runs in the chain of the chat as well, so the owner receives the updates in order;
+    // an owner that is up may hold the session of the chat, processing the update here would start a second one
+    private CompletableFuture<Void> route(Update update) {
+        if (clusterRouter.isLocal(update.getMessage().getChatId())) {
+            return handle(update);
+        }
+        return clusterRouter.forward(update).exceptionallyCompose(e -> {
+            if (!ClusterRouter.isUnreachable(e)) {
+                logger.error("The owner of the chat did not take update {}, asking the user to send it again",
+                        update.getUpdateId(), e);
+                return reply(update.getMessage().getChatId().toString(), BUSY_REPLY);
+            }
+            logger.warn("Could not reach the owner of the chat of update {}, processing it here",
+                    update.getUpdateId(), e);
+            return handle(update);
+        });
+    }
+
+    // the reply is queued with the sender, handling the next update does not wait for its delivery
+    CompletableFuture<Void> handle(Update update) {
+        return commands.stream()
                 .filter(command -> command.isApplicable(update))
                 .findFirst()
-                .ifPresent(command -> {
-                    Message message = update.getMessage();
-                    String answer = command.process(update, this);
-                    SendMessage response = new SendMessage();
-                    response.setChatId(message.getChatId().toString());
-                    response.setText(answer);
-                    try {
-                        execute(response);
-                    } catch (TelegramApiException e) {
-                        throw new IllegalStateException("...", e);
+                .map(command -> process(command, update))
+                .orElseGet(() -> CompletableFuture.completedFuture(null));
+    }
+
+    // once the deadline has passed the user is told at once, the calls still running are cancelled; a reply
+    // being streamed is edited into the notice, so no half-written text is left above it
+    private CompletableFuture<Void> process(Command command, Update update) {
+        String chatId = update.getMessage().getChatId().toString();
+        Deadline deadline = Deadline.after(updateDeadline);
+        CompletableFuture<String> processed;
+        try {
+            processed = command.process(update, this, deadline);
+        } catch (RuntimeException e) {
+            // failed before it had anything to wait for, it ends like a call that failed, closing the deadline
+            processed = CompletableFuture.failedFuture(e);
+        }
+        return deadline.bind(processed)
+                .exceptionally(e -> {
+                    if (!deadline.isExpired()) {
+                        throw e instanceof CompletionException completion ? completion : new CompletionException(e);
+                    }
+                    logger.warn("Update {} was not processed within {}", update.getUpdateId(), updateDeadline);
+                    StreamingReply stream = streaming.remove(chatId);
+                    if (stream != null) {
+                        stream.finish(TIMEOUT_REPLY);
+                        return null;
                     }
+                    return TIMEOUT_REPLY;
+                })
+                .thenAccept(answer -> {
+                    if (answer != null) {
+                        reply(chatId, answer);
+                    }
+                })
+                .whenComplete((ignored, e) -> {
+                    streaming.remove(chatId);
+                    deadline.close();
                 });
     }
-}
+
+    public CompletableFuture<Void> reply(String chatId, String answer) {
+        return sender.sendText(this, chatId, answer);
+    }
+
+    /**
+     * Starts a reply that is shown while it is being generated. Should the update run out of time,
+     * the reply is finished with the timeout notice in its place.
+     */
+    public StreamingReply streamReply(String chatId, Duration minInterval) {
+        StreamingReply reply = new StreamingReply(this, sender, chatId, minInterval);
+        streaming.put(chatId, reply);
+        return reply;
+    }
+
+    // the executor behind executeAsync and downloadFileAsync has a single thread by default
+    private static DefaultBotOptions options(int maxThreads) {
+        DefaultBotOptions options = new DefaultBotOptions();
+        options.setMaxThreads(maxThreads);
+        return options;
+    }
 
     @Override
     public String getBotUsername() {
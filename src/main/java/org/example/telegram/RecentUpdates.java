@@ -0,0 +1,36 @@
+package org.example.telegram;
+
+import java.util.LinkedHashSet;
+import java.util.SequencedSet;
+
+/**
+ * The ids of the last updates received, so an update Telegram delivers again is processed once.
+ * Only a window of ids is kept; Telegram redelivers an update shortly after a failed delivery, not
+ * long after newer updates have arrived.
+ */
+public class RecentUpdates {
+
+    private final int window;
+    private final SequencedSet<Integer> ids = new LinkedHashSet<>();
+
+    public RecentUpdates(int window) {
+        this.window = window;
+    }
+
+    /**
+     * Returns {@code false} when the update was seen already.
+     */
+    public synchronized boolean add(int updateId) {
+        if (!ids.add(updateId)) {
+            return false;
+        }
+        if (ids.size() > window) {
+            ids.removeFirst();
+        }
+        return true;
+    }
+
+    public synchronized void remove(int updateId) {
+        ids.remove(updateId);
+    }
+}
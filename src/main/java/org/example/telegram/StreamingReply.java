@@ -0,0 +1,124 @@
+package org.example.telegram;
+
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A reply that grows while it is being generated. The first text is sent as a new message which is
+ * then edited as more text arrives. Edits are batched: at most one request is in flight and
+ * requests are at least {@code minInterval} apart, which keeps the chat within Telegram's edit
+ * limits however fast the text streams in. Text beyond the message size limit continues in a new
+ * message. Everything goes out through the bot's {@link TelegramSender}.
+ */
+public class StreamingReply {
+
+    private final Bot bot;
+    private final String chatId;
+    private final TelegramSender sender;
+    private final long minIntervalNanos;
+    private final StringBuilder text = new StringBuilder();
+    // start of the text shown in the current message, everything before it went to earlier messages
+    private int messageStart;
+    private Integer messageId;
+    private String shown = "";
+    private long lastRequest;
+    private CompletableFuture<?> inFlight = CompletableFuture.completedFuture(null);
+    private CompletableFuture<Void> finished;
+
+    StreamingReply(Bot bot, TelegramSender sender, String chatId, Duration minInterval) {
+        this.bot = bot;
+        this.sender = sender;
+        this.chatId = chatId;
+        this.minIntervalNanos = minInterval.toNanos();
+        this.lastRequest = System.nanoTime() - minIntervalNanos;
+    }
+
+    public synchronized void append(String delta) {
+        if (finished != null) {
+            return;
+        }
+        text.append(delta);
+        if (inFlight.isDone() && System.nanoTime() - lastRequest >= minIntervalNanos) {
+            inFlight = publish();
+        }
+    }
+
+    /**
+     * Replaces the streamed text with the final one and publishes it once the pending request is
+     * done. The returned future completes when the whole text is shown. Only the first call counts,
+     * later ones return the same future, so a reply timing out while its text is being finished
+     * keeps the text.
+     */
+    public synchronized CompletableFuture<Void> finish(String finalText) {
+        if (finished != null) {
+            return finished;
+        }
+        text.setLength(0);
+        text.append(finalText);
+        CompletableFuture<Void> done = inFlight
+                .handle((ignored, e) -> null)
+                .thenCompose(ignored -> drain());
+        inFlight = done;
+        finished = done;
+        return done;
+    }
+
+    private synchronized CompletableFuture<Void> drain() {
+        if (isShown()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return publish().thenCompose(ignored -> drain());
+    }
+
+    private boolean isShown() {
+        String remaining = text.substring(messageStart);
+        return remaining.isBlank() || remaining.length() <= TelegramSender.MAX_MESSAGE_LENGTH && remaining.equals(shown);
+    }
+
+    // only called while no other request is in flight
+    private CompletableFuture<?> publish() {
+        if (shown.length() == TelegramSender.MAX_MESSAGE_LENGTH && text.length() > messageStart + TelegramSender.MAX_MESSAGE_LENGTH) {
+            // the current message is full, the rest goes to a new one
+            messageStart += TelegramSender.MAX_MESSAGE_LENGTH;
+            messageId = null;
+            shown = "";
+        }
+        String current = text.substring(messageStart, Math.min(text.length(), messageStart + TelegramSender.MAX_MESSAGE_LENGTH));
+        if (current.isBlank() || current.equals(shown)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        lastRequest = System.nanoTime();
+        shown = current;
+        CompletableFuture<?> request = messageId == null ? send(current) : edit(current);
+        return request.whenComplete((ignored, e) -> {
+            if (e != null) {
+                synchronized (this) {
+                    // published again by the next append or by finish
+                    shown = "";
+                }
+            }
+        });
+    }
+
+    private CompletableFuture<?> send(String current) {
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId);
+        message.setText(current);
+        return sender.submit(bot, chatId, message).thenAccept(sent -> {
+            synchronized (this) {
+                messageId = sent.getMessageId();
+            }
+        });
+    }
+
+    private CompletableFuture<?> edit(String current) {
+        EditMessageText edit = new EditMessageText();
+        edit.setChatId(chatId);
+        edit.setMessageId(messageId);
+        edit.setText(current);
+        return sender.submit(bot, chatId, edit);
+    }
+}
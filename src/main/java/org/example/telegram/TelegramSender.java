@@ -0,0 +1,299 @@
+package org.example.telegram;
+
+import jakarta.annotation.PreDestroy;
+import org.example.metrics.PipelineMetrics;
+import org.example.metrics.PipelineMetrics.Stage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outbound queue for everything the bot sends to chats. Calls are shaped to Telegram's limits: a
+ * chat gets at most one call per {@code bot.sender.chat-interval} and all chats together at most
+ * {@code bot.sender.global-per-second}. Calls of a chat go out one at a time in the order they were
+ * submitted. A call answered with 429 is retried once its {@code retry_after} has passed, which
+ * also holds back the rest of the chat's queue. Submitting never blocks; the returned future
+ * completes when Telegram has accepted the call.
+ */
+@Component
+public class TelegramSender {
+
+    private static final Logger logger = LoggerFactory.getLogger(TelegramSender.class);
+
+    static final int MAX_MESSAGE_LENGTH = 4096;
+
+    private final long chatIntervalNanos;
+    private final double globalPerNano;
+    private final double globalCapacity;
+    private final int maxAttempts;
+    private final Duration shutdownTimeout;
+    private final PipelineMetrics metrics;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("telegram-sender").daemon().factory());
+
+    private final Map<String, ChatQueue> chats = new HashMap<>();
+    // chats with a call due, none of them has a call in flight
+    private final PriorityQueue<ChatQueue> ready = new PriorityQueue<>(Comparator.comparingLong(ChatQueue::nextSend));
+    private final LongAdder throttled = new LongAdder();
+    private double globalAvailable;
+    private long lastRefill = System.nanoTime();
+    private int queued;
+    // a single timer drains the queue when the next call is due, moved earlier if a call becomes due sooner
+    private ScheduledFuture<?> scheduledDrain;
+    private long scheduledDrainAt;
+
+    public TelegramSender(@Value("${bot.sender.chat-interval:1s}") Duration chatInterval,
+                          @Value("${bot.sender.global-per-second:30}") int globalPerSecond,
+                          @Value("${bot.sender.max-attempts:5}") int maxAttempts,
+                          @Value("${bot.sender.shutdown-timeout:10s}") Duration shutdownTimeout,
+                          PipelineMetrics metrics) {
+        this.chatIntervalNanos = chatInterval.toNanos();
+        this.globalCapacity = globalPerSecond;
+        this.globalPerNano = globalPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+        this.globalAvailable = globalPerSecond;
+        this.maxAttempts = maxAttempts;
+        this.shutdownTimeout = shutdownTimeout;
+        this.metrics = metrics;
+    }
+
+    public <T extends Serializable, M extends BotApiMethod<T>> CompletableFuture<T> submit(DefaultAbsSender bot,
+                                                                                           String chatId,
+                                                                                           M method) {
+        Outgoing<T> outgoing = new Outgoing<>(bot, chatId, method);
+        synchronized (this) {
+            ChatQueue chat = chats.computeIfAbsent(chatId, id -> new ChatQueue(id, System.nanoTime()));
+            chat.pending.add(outgoing);
+            queued++;
+            if (chat.pending.size() == 1 && !chat.inFlight) {
+                ready.add(chat);
+            }
+        }
+        drain();
+        return outgoing.result;
+    }
+
+    /**
+     * Sends a text, split into as many messages as Telegram's size limit requires. Lines and words
+     * are kept whole where possible.
+     */
+    public CompletableFuture<Void> sendText(DefaultAbsSender bot, String chatId, String text) {
+        List<CompletableFuture<?>> sent = new ArrayList<>();
+        for (String part : split(text, MAX_MESSAGE_LENGTH)) {
+            SendMessage message = new SendMessage();
+            message.setChatId(chatId);
+            message.setText(part);
+            sent.add(submit(bot, chatId, message));
+        }
+        return CompletableFuture.allOf(sent.toArray(CompletableFuture[]::new));
+    }
+
+    public synchronized int queued() {
+        return queued;
+    }
+
+    public long throttled() {
+        return throttled.sum();
+    }
+
+    static List<String> split(String text, int maxLength) {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        while (text.length() - start > maxLength) {
+            int end = start + maxLength;
+            int newline = text.lastIndexOf('\n', end - 1);
+            int space = text.lastIndexOf(' ', end - 1);
+            if (newline > start + maxLength / 2) {
+                end = newline + 1;
+            } else if (space > start + maxLength / 2) {
+                end = space + 1;
+            } else if (Character.isHighSurrogate(text.charAt(end - 1))) {
+                end--;
+            }
+            parts.add(text.substring(start, end));
+            start = end;
+        }
+        if (start < text.length() || parts.isEmpty()) {
+            parts.add(text.substring(start));
+        }
+        return parts;
+    }
+
+    // hands the due calls to Telegram as far as the limits allow, outside the lock
+    private void drain() {
+        List<Outgoing<?>> due = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            globalAvailable = Math.min(globalCapacity, globalAvailable + (now - lastRefill) * globalPerNano);
+            lastRefill = now;
+            while (!ready.isEmpty()) {
+                ChatQueue chat = ready.peek();
+                if (chat.nextSend > now) {
+                    scheduleDrain(chat.nextSend, now);
+                    break;
+                }
+                if (globalAvailable < 1) {
+                    scheduleDrain(now + (long) Math.ceil((1 - globalAvailable) / globalPerNano), now);
+                    break;
+                }
+                ready.poll();
+                globalAvailable--;
+                chat.inFlight = true;
+                due.add(chat.pending.peek());
+            }
+        }
+        due.forEach(this::execute);
+    }
+
+    // a pending timer due no later than the call already covers it; one that has fired is replaced,
+    // at worst its drain then runs once more for nothing
+    private void scheduleDrain(long at, long now) {
+        if (scheduledDrain != null && scheduledDrainAt > now) {
+            if (scheduledDrainAt <= at) {
+                return;
+            }
+            scheduledDrain.cancel(false);
+        }
+        scheduledDrainAt = at;
+        scheduledDrain = timer.schedule(this::drain, at - now, TimeUnit.NANOSECONDS);
+    }
+
+    private <T extends Serializable> void execute(Outgoing<T> outgoing) {
+        Stage stage = outgoing.method instanceof EditMessageText ? Stage.EDIT_MESSAGE : Stage.SEND_MESSAGE;
+        CompletableFuture<T> call;
+        try {
+            call = metrics.time(stage, () -> outgoing.bot.executeAsync(outgoing.method));
+        } catch (TelegramApiException | RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((result, e) -> completed(outgoing, result, e));
+    }
+
+    private <T extends Serializable> void completed(Outgoing<T> outgoing, T result, Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause()
+                : failure;
+        long retryAfter = retryAfterNanos(cause);
+        boolean done;
+        synchronized (this) {
+            ChatQueue chat = chats.get(outgoing.chatId);
+            chat.inFlight = false;
+            long now = System.nanoTime();
+            done = retryAfter <= 0 || ++outgoing.attempts >= maxAttempts;
+            if (retryAfter > 0) {
+                throttled.increment();
+                chat.nextSend = now + retryAfter;
+            } else {
+                chat.nextSend = now + chatIntervalNanos;
+            }
+            if (done) {
+                chat.pending.poll();
+                queued--;
+            }
+            if (!chat.pending.isEmpty()) {
+                ready.add(chat);
+            } else {
+                // kept until its interval has passed, so a new call does not go out too early
+                timer.schedule(() -> removeIfIdle(chat), Math.max(0, chat.nextSend - now), TimeUnit.NANOSECONDS);
+            }
+        }
+        if (!done) {
+            logger.warn("Telegram throttled chat {}, retrying in {} ms", outgoing.chatId,
+                    TimeUnit.NANOSECONDS.toMillis(retryAfter));
+        }
+        drain();
+        if (done) {
+            if (cause == null) {
+                outgoing.result.complete(result);
+            } else {
+                logger.error("Could not send to chat {}", outgoing.chatId, cause);
+                outgoing.result.completeExceptionally(cause);
+            }
+        }
+    }
+
+    private synchronized void removeIfIdle(ChatQueue chat) {
+        if (chat.pending.isEmpty() && !chat.inFlight && chats.get(chat.chatId) == chat) {
+            chats.remove(chat.chatId);
+        }
+    }
+
+    private static long retryAfterNanos(Throwable failure) {
+        if (failure instanceof TelegramApiRequestException request
+                && request.getErrorCode() != null && request.getErrorCode() == 429) {
+            Integer seconds = request.getParameters() == null ? null : request.getParameters().getRetryAfter();
+            return TimeUnit.SECONDS.toNanos(seconds == null ? 1 : seconds);
+        }
+        return 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+        try {
+            while (queued() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (queued() > 0) {
+            logger.warn("{} calls to Telegram were not sent before shutdown", queued());
+        }
+        timer.shutdownNow();
+    }
+
+    private static final class ChatQueue {
+        private final String chatId;
+        private final Queue<Outgoing<?>> pending = new ArrayDeque<>();
+        private long nextSend;
+        private boolean inFlight;
+
+        private ChatQueue(String chatId, long nextSend) {
+            this.chatId = chatId;
+            this.nextSend = nextSend;
+        }
+
+        private long nextSend() {
+            return nextSend;
+        }
+    }
+
+    private static final class Outgoing<T extends Serializable> {
+        private final DefaultAbsSender bot;
+        private final String chatId;
+        private final BotApiMethod<T> method;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private int attempts;
+
+        private Outgoing(DefaultAbsSender bot, String chatId, BotApiMethod<T> method) {
+            this.bot = bot;
+            this.chatId = chatId;
+            this.method = method;
+        }
+    }
+}
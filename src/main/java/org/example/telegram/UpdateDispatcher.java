@@ -0,0 +1,169 @@
+package org.example.telegram;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Moves update handling off the long-polling thread. Every update starts on its own virtual thread
+ * and hands back a future, so an update waiting for Telegram or OpenAI holds no thread at all.
+ * Updates of the same chat are chained so answers keep their order, and the number of updates in
+ * flight is bounded: once the limit is reached {@link #dispatch} blocks the caller, which in turn
+ * stops the poller from fetching more work. A chat may have no more than
+ * {@code bot.dispatcher.max-per-chat} updates waiting in its chain, further ones are dropped, so a
+ * chat flooding the bot cannot take every slot and stall the others.
+ */
+@Component
+public class UpdateDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpdateDispatcher.class);
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("update-", 0).factory());
+    private final Map<Long, Chain> chains = new ConcurrentHashMap<>();
+    private final int maxInFlight;
+    private final int maxPerChat;
+    private final Semaphore inFlight;
+    private final Duration shutdownTimeout;
+    private final LongAdder dropped = new LongAdder();
+
+    public UpdateDispatcher(@Value("${bot.dispatcher.max-in-flight:256}") int maxInFlight,
+                            @Value("${bot.dispatcher.max-per-chat:16}") int maxPerChat,
+                            @Value("${bot.dispatcher.shutdown-timeout:30s}") Duration shutdownTimeout) {
+        this.maxInFlight = maxInFlight;
+        this.maxPerChat = maxPerChat;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.shutdownTimeout = shutdownTimeout;
+    }
+
+    public void dispatch(Long chatId, Supplier<CompletableFuture<?>> task) {
+        if (executor.isShutdown()) {
+            logger.warn("Dispatcher is shut down, dropping update for chat {}", chatId);
+            return;
+        }
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (!submit(chatId, task)) {
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Like {@link #dispatch} but returns {@code false} instead of blocking when the limit of
+     * updates in flight is reached, for callers that can have the update redelivered later. An
+     * update dropped because its chat has too many waiting counts as accepted: asking for it
+     * again would only hold up the updates of every other chat behind it.
+     */
+    public boolean tryDispatch(Long chatId, Supplier<CompletableFuture<?>> task) {
+        if (executor.isShutdown() || !inFlight.tryAcquire()) {
+            return false;
+        }
+        if (!submit(chatId, task)) {
+            inFlight.release();
+        }
+        return true;
+    }
+
+    // returns false when the update is dropped; an executor shut down meanwhile fails the link
+    // instead of throwing, so its permit is released all the same
+    private boolean submit(Long chatId, Supplier<CompletableFuture<?>> task) {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Void>[] link = new CompletableFuture[1];
+        chains.compute(chatId, (id, chain) -> {
+            Chain current = chain == null ? new Chain() : chain;
+            if (current.pending >= maxPerChat) {
+                return current;
+            }
+            current.pending++;
+            current.tail = link[0] = current.tail
+                    // a rejected update does not hold up the ones behind it
+                    .exceptionally(e -> null)
+                    .thenCompose(ignored -> CompletableFuture.supplyAsync(() -> run(chatId, task), executor)
+                            .thenCompose(Function.identity()));
+            return current;
+        });
+        if (link[0] == null) {
+            dropped.increment();
+            logger.warn("Chat {} has {} updates waiting, dropping another one", chatId, maxPerChat);
+            return false;
+        }
+        link[0].whenComplete((ignored, e) -> {
+            inFlight.release();
+            chains.computeIfPresent(chatId, (id, chain) -> --chain.pending == 0 ? null : chain);
+            if (e != null) {
+                logger.error("Update for chat {} was not processed", chatId, e);
+            }
+        });
+        return true;
+    }
+
+    public int inFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    // failures are logged and swallowed here so a failed update does not poison the chain of the chat
+    private CompletableFuture<Void> run(Long chatId, Supplier<CompletableFuture<?>> task) {
+        CompletableFuture<?> result;
+        try {
+            result = task.get();
+        } catch (RuntimeException e) {
+            logger.error("Error processing update for chat {}", chatId, e);
+            return CompletableFuture.completedFuture(null);
+        }
+        return result.handle((ignored, e) -> {
+            if (e != null) {
+                logger.error("Error processing update for chat {}", chatId, e);
+            }
+            return null;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        CompletableFuture<?>[] pending = chains.values().stream()
+                .map(chain -> chain.tail)
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(pending).get(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("Updates still running after {}, interrupting them", shutdownTimeout);
+            executor.shutdownNow();
+        } catch (ExecutionException e) {
+            // already logged by the chain of the chat
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // the updates of one chat, changed only inside compute() on its map entry
+    private static final class Chain {
+        private volatile CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+        private int pending;
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.telegram;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Receives updates when the bot runs in webhook mode ({@code bot.mode: webhook}). Unlike long
+ * polling this lets several instances share the load behind a load balancer. Telegram sends the
+ * configured secret token with every update; requests without it are rejected. An update is
+ * acknowledged as soon as it is handed to the {@link UpdateDispatcher}, and redeliveries are
+ * recognised by their {@code update_id}. When too many updates are in flight the update is
+ * refused with 429 and Telegram delivers it again later.
+ */
+@RestController
+@ConditionalOnProperty(name = "bot.mode", havingValue = "webhook")
+public class WebhookController {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookController.class);
+
+    static final String SECRET_TOKEN_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final Bot bot;
+    private final byte[] secretToken;
+    private final RecentUpdates recentUpdates;
+
+    public WebhookController(Bot bot,
+                             @Value("${bot.webhook.secret-token}") String secretToken,
+                             @Value("${bot.webhook.dedup-window:10000}") int dedupWindow) {
+        if (secretToken.isBlank()) {
+            throw new IllegalStateException("bot.webhook.secret-token must be set in webhook mode");
+        }
+        this.bot = bot;
+        this.secretToken = secretToken.getBytes(StandardCharsets.UTF_8);
+        this.recentUpdates = new RecentUpdates(dedupWindow);
+    }
+
+    @PostMapping("${bot.webhook.path:/telegram/webhook}")
+    public ResponseEntity<Void> receive(@RequestHeader(value = SECRET_TOKEN_HEADER, required = false) String token,
+                                        @RequestBody Update update) {
+        // constant time comparison, the token is the only thing authenticating Telegram
+        if (token == null || !MessageDigest.isEqual(secretToken, token.getBytes(StandardCharsets.UTF_8))) {
+            logger.warn("Rejected a webhook call without a valid secret token");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        Integer updateId = update.getUpdateId();
+        if (updateId != null && !recentUpdates.add(updateId)) {
+            logger.info("Ignoring update {} delivered again", updateId);
+            return ResponseEntity.ok().build();
+        }
+        if (!bot.offerUpdate(update)) {
+            if (updateId != null) {
+                recentUpdates.remove(updateId);
+            }
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        }
+        return ResponseEntity.ok().build();
+    }
+}
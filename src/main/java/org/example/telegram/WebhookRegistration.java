@@ -0,0 +1,63 @@
+package org.example.telegram;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import org.example.config.WarmedUpEvent;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Points Telegram at the webhook once the application is warmed up for its first updates. Setting the same
+ * webhook again is harmless, so every instance behind the load balancer may do it;
+ * {@code bot.webhook.register: false} leaves the registration to someone else. The Bot API is
+ * called directly because the Telegram client only registers webhooks for its own webhook server.
+ */
+@Component
+@ConditionalOnProperty(name = "bot.mode", havingValue = "webhook")
+public class WebhookRegistration {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookRegistration.class);
+
+    private final RestTemplate restTemplate = new RestTemplate();
+    private final String token;
+    private final String url;
+    private final String secretToken;
+    private final int maxConnections;
+    private final boolean register;
+
+    public WebhookRegistration(@Value("${bot.token}") String token,
+                               @Value("${bot.webhook.url}") String url,
+                               @Value("${bot.webhook.secret-token}") String secretToken,
+                               @Value("${bot.webhook.max-connections:40}") int maxConnections,
+                               @Value("${bot.webhook.register:true}") boolean register) {
+        this.token = token;
+        this.url = url;
+        this.secretToken = secretToken;
+        this.maxConnections = maxConnections;
+        this.register = register;
+    }
+
+    @EventListener(WarmedUpEvent.class)
+    public void register() {
+        if (!register) {
+            return;
+        }
+        Map<String, Object> request = Map.of(
+                "url", url,
+                "secret_token", secretToken,
+                "max_connections", maxConnections,
+                "allowed_updates", List.of("message"));
+        Map<?, ?> response = restTemplate.postForObject(
+                "https://api.telegram.org/bot{token}/setWebhook", request, Map.class, token);
+        if (response == null || !Boolean.TRUE.equals(response.get("ok"))) {
+            throw new IllegalStateException("Telegram refused the webhook: " + response);
+        }
+        logger.info("Webhook registered at {}", url);
+    }
+}
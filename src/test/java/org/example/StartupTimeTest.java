@@ -0,0 +1,52 @@
+package org.example;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures the context boot under the {@code fast-startup} profile against the boot time measured
+ * on the reference machine. It runs in the {@code startupTest} task, part of {@code check}, and
+ * fails beyond {@code startup.limit}, 20% above the measurement unless given.
+ */
+@Tag("startup")
+class StartupTimeTest {
+
+    // no updates are processed while a restarted instance boots, this is the gap a deploy may cause;
+    // the median of five runs on one vCPU with JDK 21, which took 8.8 to 10.3 s
+    private static final Duration MEASURED = Duration.ofMillis(9400);
+
+    @Test void contextBootsWithinTheLimit() {
+        Duration limit = Duration.parse(System.getProperty("startup.limit",
+                MEASURED.plus(MEASURED.dividedBy(5)).toString()));
+        long start = System.nanoTime();
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(ReadApp.class)
+                .profiles("fast-startup")
+                .properties(
+                        "server.port=0",
+                        "bot.mode=none",
+                        "bot.token=test-token",
+                        "bot.startup.warm-up=false",
+                        "book.max-questions=3",
+                        "book.question-pool.enabled=false",
+                        "openai.api.key=test-key",
+                        "openai.api.chat.url=http://localhost:9/v1/chat/completions",
+                        "openai.api.chat.model=gpt-4o",
+                        "openai.api.chat.system_role=You recommend books.",
+                        "openai.api.transcription.url=http://localhost:9/v1/audio/transcriptions",
+                        "openai.api.transcription.model=whisper-1",
+                        "openai.api.transcription.language=en")
+                .run()) {
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            assertTrue(context.isRunning());
+            System.out.printf("Context booted in %d ms, measured %d ms, limit %d ms%n",
+                    elapsed.toMillis(), MEASURED.toMillis(), limit.toMillis());
+            assertTrue(elapsed.compareTo(limit) < 0, "Context booted in " + elapsed.toMillis() + " ms");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.example.audio;
+
+import org.example.dto.VoiceNote;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SilenceTrimmerTest {
+
+    // CELT fullband, one 20 ms frame per packet
+    private static final byte TOC = (byte) (31 << 3);
+    private static final byte[] HEAD = "OpusHead\u0001\u00018\u0001\u0080»\0\0\0\0\0".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] TAGS = "OpusTags\u0004\0\0\0test\0\0\0\0".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final SilenceTrimmer trimmer = new SilenceTrimmer(true, 10, Duration.ofMillis(200));
+
+    @Test void readsWhatItWrites() {
+        List<byte[]> audio = new ArrayList<>();
+        audio.add(packet(80));
+        audio.add(packet(700));
+        audio.add(packet(255));
+        audio.add(packet(3));
+        byte[] ogg = OggOpus.write(new OggOpus.Stream(7, HEAD, TAGS, audio), 2);
+
+        OggOpus.Stream stream = OggOpus.read(ogg);
+        assertEquals(7, stream.serial());
+        assertArrayEquals(HEAD, stream.head());
+        assertArrayEquals(TAGS, stream.tags());
+        assertEquals(audio.size(), stream.audio().size());
+        for (int i = 0; i < audio.size(); i++) {
+            assertArrayEquals(audio.get(i), stream.audio().get(i));
+        }
+    }
+
+    @Test void shortensLongPauses() {
+        // 1 s of speech, 3 s of silence, 1 s of speech
+        List<byte[]> audio = new ArrayList<>();
+        audio.addAll(packets(50, 80));
+        audio.addAll(packets(150, 3));
+        audio.addAll(packets(50, 80));
+        byte[] ogg = OggOpus.write(new OggOpus.Stream(1, HEAD, TAGS, audio), 50);
+
+        VoiceNote trimmed = trimmer.trim(VoiceNote.inMemory("voice.ogg", ogg));
+
+        OggOpus.Stream stream = OggOpus.read(trimmed.content());
+        // 200 ms of the pause are kept
+        assertEquals(110, stream.audio().size());
+        assertTrue(trimmed.size() < ogg.length);
+        assertEquals(2.8, trimmer.trimmedSeconds(), 0.001);
+        assertEquals(ogg.length - trimmed.size(), trimmer.trimmedBytes());
+    }
+
+    @Test void passesOtherAudioOnUnchanged() {
+        VoiceNote notOgg = VoiceNote.inMemory("voice.ogg", "RIFF....WAVE".getBytes(StandardCharsets.US_ASCII));
+        assertSame(notOgg, trimmer.trim(notOgg));
+
+        byte[] speech = OggOpus.write(new OggOpus.Stream(1, HEAD, TAGS, packets(20, 80)), 50);
+        VoiceNote withoutPauses = VoiceNote.inMemory("voice.ogg", speech);
+        assertSame(withoutPauses, trimmer.trim(withoutPauses));
+
+        byte[] corrupt = speech.clone();
+        corrupt[corrupt.length - 1] ^= 1;
+        VoiceNote damaged = VoiceNote.inMemory("voice.ogg", corrupt);
+        assertSame(damaged, trimmer.trim(damaged));
+    }
+
+    @Test void countsSamplesFromTheTableOfContents() {
+        assertEquals(960, OggOpus.samples(packet(80)));
+        // SILK 60 ms, two frames
+        assertEquals(5760, OggOpus.samples(new byte[] {(byte) (3 << 3 | 1), 0}));
+        // CELT 2.5 ms, code 3 with five frames
+        assertEquals(600, OggOpus.samples(new byte[] {(byte) (16 << 3 | 3), 5}));
+    }
+
+    private static List<byte[]> packets(int count, int size) {
+        List<byte[]> packets = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            packets.add(packet(size));
+        }
+        return packets;
+    }
+
+    private static byte[] packet(int size) {
+        byte[] packet = new byte[size];
+        Arrays.fill(packet, (byte) 0x5a);
+        packet[0] = TOC;
+        return packet;
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.client;
+
+import org.example.dto.GptRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversationTest {
+
+    private final TokenCounter tokenCounter = new TokenCounter("gpt-4o");
+
+    @Test void countsEveryMessageWithItsFraming() {
+        Conversation conversation = new Conversation(tokenCounter, 8000)
+                .system("You recommend books.")
+                .user("What should I read next?");
+
+        int expected = tokenCounter.count("You recommend books.") + tokenCounter.count("What should I read next?")
+                + 2 * TokenCounter.TOKENS_PER_MESSAGE + TokenCounter.TOKENS_PER_REPLY;
+        assertEquals(expected, conversation.tokens());
+        assertEquals(List.of("system", "user"), roles(conversation.messages()));
+    }
+
+    @Test void leavesOutTheOldestTurnsOverTheBudget() {
+        Conversation conversation = new Conversation(tokenCounter, 120).system("You recommend books.");
+        for (int i = 0; i < 10; i++) {
+            conversation.assistant("Question number " + i + ": which genre do you enjoy the most and why?")
+                    .user("Answer number " + i + ": literary fiction with a touch of the fantastic.");
+        }
+        List<GptRequest.Message> messages = conversation.messages();
+
+        assertTrue(conversation.tokens() > 120);
+        assertEquals("You recommend books.", messages.get(0).getContent());
+        assertEquals("system", messages.get(1).getRole());
+        assertTrue(messages.get(messages.size() - 1).getContent().startsWith("Answer number 9"));
+        assertTrue(messages.size() < 22);
+    }
+
+    @Test void alwaysSendsTheLatestTurn() {
+        Conversation conversation = new Conversation(tokenCounter, 10)
+                .system("You recommend books.")
+                .user("What should I read next?");
+        assertEquals(List.of("system", "user"), roles(conversation.messages()));
+    }
+
+    @Test void instructionsPrecedeTheDialogue() {
+        Conversation conversation = new Conversation(tokenCounter, 8000).user("Hi");
+        assertThrows(IllegalStateException.class, () -> conversation.system("You recommend books."));
+    }
+
+    private static List<String> roles(List<GptRequest.Message> messages) {
+        return messages.stream().map(GptRequest.Message::getRole).toList();
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeadlineTest {
+
+    @Test void cancelsBoundCallsWhenItPasses() {
+        try (Deadline deadline = Deadline.after(Duration.ofMillis(20))) {
+            CompletableFuture<String> call = deadline.bind(new CompletableFuture<>());
+
+            assertThrows(CancellationException.class, () -> call.get(1, TimeUnit.SECONDS));
+            assertTrue(deadline.isExpired());
+            assertThrows(CancellationException.class, deadline::check);
+        }
+    }
+
+    @Test void cancelsCallsBoundAfterItPassed() throws InterruptedException {
+        try (Deadline deadline = Deadline.after(Duration.ZERO)) {
+            while (!deadline.isExpired()) {
+                Thread.sleep(1);
+            }
+            assertTrue(deadline.bind(new CompletableFuture<>()).isCancelled());
+        }
+    }
+
+    @Test void leavesCallsAloneOnceClosed() throws InterruptedException {
+        Deadline deadline = Deadline.after(Duration.ofMillis(20));
+        CompletableFuture<String> call = deadline.bind(new CompletableFuture<>());
+        deadline.close();
+
+        Thread.sleep(100);
+        assertFalse(deadline.isExpired());
+        assertFalse(call.isDone());
+    }
+
+    @Test void limitsTimeoutsToTheTimeLeft() {
+        try (Deadline deadline = Deadline.after(Duration.ofSeconds(5))) {
+            assertEquals(Duration.ofSeconds(1), deadline.remaining(Duration.ofSeconds(1)));
+            Duration left = deadline.remaining(Duration.ofMinutes(1));
+            assertTrue(left.compareTo(Duration.ofSeconds(5)) <= 0 && left.compareTo(Duration.ofSeconds(4)) > 0);
+        }
+        assertEquals(Duration.ofMinutes(1), Deadline.NONE.remaining(Duration.ofMinutes(1)));
+    }
+
+    @Test void noneNeverPasses() {
+        CompletableFuture<String> call = new CompletableFuture<>();
+
+        assertSame(call, Deadline.NONE.bind(call));
+        Deadline.NONE.check();
+        assertFalse(Deadline.NONE.isExpired());
+    }
+}
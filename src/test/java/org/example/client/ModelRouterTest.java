@@ -0,0 +1,106 @@
+package org.example.client;
+
+import org.example.dto.VoiceNote;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ModelRouterTest {
+
+    private final OpenAiClient remote = mock(OpenAiClient.class);
+    private final LocalModelClient local = mock(LocalModelClient.class);
+
+    @Test void routesCheapCallsToTheLocalEngine() {
+        when(local.isEnabled()).thenReturn(true);
+        when(local.model()).thenReturn("llama");
+        ModelRouter router = new ModelRouter(remote, local, "local", "LOCAL", "remote", "remote");
+
+        assertEquals("llama", router.chat(PromptType.QUESTION).model());
+        assertEquals("llama", router.chat(PromptType.READING).model());
+        assertSame(remote, router.chat(PromptType.FEEDBACK));
+        assertSame(remote, router.transcription());
+    }
+
+    @Test void sendsEverythingToOpenAiWithoutALocalServer() {
+        ModelRouter router = new ModelRouter(remote, local, "local", "local", "local", "local");
+        for (PromptType type : PromptType.values()) {
+            assertSame(remote, router.chat(type));
+        }
+        assertSame(remote, router.transcription());
+    }
+
+    @Test void repeatsFailedLocalCallsRemotely() {
+        when(local.isEnabled()).thenReturn(true);
+        Conversation conversation = mock(Conversation.class);
+        VoiceNote audio = VoiceNote.inMemory("voice.ogg", new byte[0]);
+        when(local.promptModelAsync(conversation, Deadline.NONE))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("down")));
+        when(remote.promptModelAsync(conversation, Deadline.NONE))
+                .thenReturn(CompletableFuture.completedFuture("Try Piranesi."));
+        when(local.transcribeAsync(audio, Deadline.NONE))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("down")));
+        when(remote.transcribeAsync(audio, Deadline.NONE)).thenReturn(CompletableFuture.completedFuture("fantasy"));
+        ModelRouter router = new ModelRouter(remote, local, "local", "local", "local", "local");
+
+        assertEquals("Try Piranesi.", router.chat(PromptType.FEEDBACK).promptModelAsync(conversation).join());
+        assertEquals("fantasy", router.transcription().transcribeAsync(audio).join());
+    }
+
+    @Test void reportsTheModelThatAnswered() {
+        when(local.isEnabled()).thenReturn(true);
+        when(local.model()).thenReturn("llama3");
+        when(remote.model()).thenReturn("gpt-4o");
+        Conversation conversation = mock(Conversation.class);
+        when(local.completeAsync(conversation, Deadline.NONE)).thenCallRealMethod();
+        when(remote.completeAsync(conversation, Deadline.NONE)).thenCallRealMethod();
+        when(local.promptModelAsync(conversation, Deadline.NONE))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("down")));
+        when(remote.promptModelAsync(conversation, Deadline.NONE))
+                .thenReturn(CompletableFuture.completedFuture("Try Piranesi."));
+        ChatEngine engine = new ModelRouter(remote, local, "local", "local", "local", "local").chat(PromptType.FEEDBACK);
+
+        assertEquals("llama3", engine.model());
+        assertEquals(new ChatEngine.Completion("gpt-4o", "Try Piranesi."),
+                engine.completeAsync(conversation, Deadline.NONE).join());
+    }
+
+    @Test void doesNotRepeatAStreamThatHasStarted() {
+        Conversation conversation = mock(Conversation.class);
+        when(local.streamModel(eq(conversation), any(), eq(Deadline.NONE))).thenAnswer(invocation -> {
+            invocation.<Consumer<String>>getArgument(1).accept("Try ");
+            return CompletableFuture.failedFuture(new IllegalStateException("down"));
+        });
+        ChatEngine engine = new ModelRouter.FallbackChatEngine(local, remote);
+        List<String> deltas = new CopyOnWriteArrayList<>();
+
+        assertThrows(Exception.class, () -> engine.streamModel(conversation, deltas::add).join());
+        assertEquals(List.of("Try "), deltas);
+        verify(remote, never()).streamModel(any(Conversation.class), any(), any());
+    }
+
+    @Test void doesNotRepeatACallOnceTheDeadlineHasPassed() {
+        Conversation conversation = mock(Conversation.class);
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        try (Deadline deadline = Deadline.after(Duration.ofMillis(20))) {
+            when(local.promptModelAsync(conversation, deadline)).thenReturn(deadline.bind(pending));
+            ChatEngine engine = new ModelRouter.FallbackChatEngine(local, remote);
+
+            CompletableFuture<String> answer = engine.promptModelAsync(conversation, deadline);
+            ExecutionException e = assertThrows(ExecutionException.class, () -> answer.get(1, TimeUnit.SECONDS));
+            assertInstanceOf(CancellationException.class, e.getCause());
+            assertTrue(pending.isCancelled());
+            verify(remote, never()).promptModelAsync(any(Conversation.class), any());
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package org.example.client;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.config.WebConfig;
+import org.example.metrics.PipelineMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpenAiClientTest {
+
+    private HttpServer server;
+    private HttpUsage chatUsage;
+    private OpenAiClient client;
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            byte[] body = """
+                    {"choices":[{"message":{"role":"assistant","content":"Try Piranesi."}}]}
+                    """.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/v1/stream", exchange -> {
+            byte[] body = ("data: {\"choices\":[{\"delta\":{\"role\":\"assistant\"}}]}\n\n"
+                    + "data: {\"choices\":[{\"delta\":{\"content\":\"Try \"}}]}\n\n"
+                    + "data: {\"choices\":[{\"delta\":{\"content\":\"Piranesi.\"}}]}\n\n"
+                    + "data: [DONE]\n\n").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/v1/slow", exchange -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        server.start();
+
+        WebConfig config = new WebConfig();
+        chatUsage = config.chatHttpUsage();
+        HttpClient httpClient = config.chatHttpClient(Duration.ofSeconds(1));
+        HttpUsage transcriptionUsage = config.transcriptionHttpUsage();
+        client = new OpenAiClient(httpClient, httpClient, chatUsage, transcriptionUsage,
+                rateLimiter("chat"), rateLimiter("transcription"), rateLimiter("embedding"),
+                new TokenCounter("gpt-4o"), config.objectMapper(), new PipelineMetrics(registry));
+        ReflectionTestUtils.setField(client, "apiKey", "test-key");
+        ReflectionTestUtils.setField(client, "chatModel", "gpt-4o");
+        ReflectionTestUtils.setField(client, "maxContextTokens", 8000);
+        ReflectionTestUtils.setField(client, "systemRole", "You recommend books.");
+        ReflectionTestUtils.setField(client, "chatApiUrl", url("/v1/chat/completions"));
+        ReflectionTestUtils.setField(client, "chatReadTimeout", Duration.ofMillis(500));
+    }
+
+    @AfterEach void stopStub() {
+        server.stop(0);
+    }
+
+    @Test void slowResponsesHitTheReadTimeout() {
+        ReflectionTestUtils.setField(client, "chatApiUrl", url("/v1/slow"));
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> client.promptModelAsync("Anyone there?").join());
+        assertInstanceOf(HttpTimeoutException.class, e.getCause());
+        assertEquals(1, chatUsage.failures());
+    }
+
+    @Test void theDeadlineCutsTheReadTimeoutShort() {
+        ReflectionTestUtils.setField(client, "chatApiUrl", url("/v1/slow"));
+        ReflectionTestUtils.setField(client, "chatReadTimeout", Duration.ofSeconds(30));
+        long start = System.nanoTime();
+        try (Deadline deadline = Deadline.after(Duration.ofMillis(200))) {
+            CompletionException e = assertThrows(CompletionException.class,
+                    () -> client.promptModelAsync(client.conversation().user("Anyone there?"), deadline).join());
+            assertInstanceOf(CancellationException.class, e.getCause());
+        }
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(1)) < 0);
+    }
+
+    @Test void promptsTheChatEndpoint() {
+        CompletableFuture<String> first = client.promptModelAsync("What should I read?");
+        CompletableFuture<String> second = client.promptModelAsync("And after that?");
+        assertEquals("Try Piranesi.", first.join());
+        assertEquals("Try Piranesi.", second.join());
+        assertEquals(2, chatUsage.requests());
+        assertEquals(0, chatUsage.inFlight());
+        assertEquals(2, registry.get("bot.stage").tags("stage", "chat", "outcome", "success").timer().count());
+    }
+
+    @Test void asyncErrorsCarryTheStatus() {
+        ReflectionTestUtils.setField(client, "chatApiUrl", url("/v1/missing"));
+        CompletionException e = assertThrows(CompletionException.class, () -> client.promptModelAsync("?").join());
+        assertInstanceOf(HttpClientErrorException.class, e.getCause());
+        assertEquals(1, chatUsage.failures());
+        assertEquals(1, registry.get("bot.stage").tags("stage", "chat", "outcome", "error").timer().count());
+    }
+
+    @Test void streamsCompletionDeltas() {
+        ReflectionTestUtils.setField(client, "chatApiUrl", url("/v1/stream"));
+        List<String> deltas = new CopyOnWriteArrayList<>();
+        assertEquals("Try Piranesi.", client.streamModel("What should I read?", deltas::add).join());
+        assertEquals(List.of("Try ", "Piranesi."), deltas);
+    }
+
+    @Test void aBrokenChunkFailsTheStream() {
+        server.createContext("/v1/broken-stream", exchange -> {
+            byte[] body = ("data: {\"choices\":[{\"delta\":{\"content\":\"Try \"}}]}\n\n"
+                    + "data: {\"choices\":[{\"delta\":\n\n"
+                    + "data: {\"choices\":[{\"delta\":{\"content\":\"Piranesi.\"}}]}\n\n").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        ReflectionTestUtils.setField(client, "chatApiUrl", url("/v1/broken-stream"));
+        List<String> deltas = new CopyOnWriteArrayList<>();
+
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> client.streamModel("What should I read?", deltas::add).orTimeout(5, TimeUnit.SECONDS).join());
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertFalse(deltas.contains("Piranesi."));
+    }
+
+    @Test void embedsText() {
+        server.createContext("/v1/embeddings", exchange -> {
+            byte[] body = """
+                    {"object":"list","data":[{"object":"embedding","index":0,"embedding":[0.25,-0.5,1.0]}]}
+                    """.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        ReflectionTestUtils.setField(client, "embeddingApiUrl", url("/v1/embeddings"));
+        assertArrayEquals(new float[] {0.25f, -0.5f, 1.0f}, client.embedAsync("fantasy, fast-paced", Deadline.NONE).join());
+    }
+
+    @Test void retriesThrottledCalls() {
+        AtomicInteger calls = new AtomicInteger();
+        server.createContext("/v1/busy", exchange -> {
+            if (calls.getAndIncrement() == 0) {
+                exchange.getResponseHeaders().add("retry-after-ms", "20");
+                exchange.sendResponseHeaders(429, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = """
+                    {"choices":[{"message":{"role":"assistant","content":"Try Piranesi."}}]}
+                    """.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        ReflectionTestUtils.setField(client, "chatApiUrl", url("/v1/busy"));
+        assertEquals("Try Piranesi.", client.promptModelAsync("What should I read?").join());
+        assertEquals(2, calls.get());
+        assertEquals(1, chatUsage.failures());
+    }
+
+    private static OpenAiRateLimiter rateLimiter(String endpoint) {
+        return new OpenAiRateLimiter(endpoint, 0, 0, 16, 16, 3, Duration.ofMillis(10), Duration.ofMillis(50));
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+}
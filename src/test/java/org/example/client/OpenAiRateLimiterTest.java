@@ -0,0 +1,124 @@
+package org.example.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class OpenAiRateLimiterTest {
+
+    @Test void limitsRequestsPerMinute() {
+        OpenAiRateLimiter limiter = limiter(2, 0, 8, 1);
+        assertTrue(limiter.execute(0, () -> completed(200, Map.of())).isDone());
+        assertTrue(limiter.execute(0, () -> completed(200, Map.of())).isDone());
+
+        CompletableFuture<HttpResponse<String>> third = limiter.execute(0, () -> completed(200, Map.of()));
+        assertFalse(third.isDone());
+        assertEquals(1, limiter.waiting());
+    }
+
+    @Test void limitsTokensPerMinute() {
+        OpenAiRateLimiter limiter = limiter(0, 1000, 8, 1);
+        assertTrue(limiter.execute(800, () -> completed(200, Map.of())).isDone());
+        assertFalse(limiter.execute(800, () -> completed(200, Map.of())).isDone());
+    }
+
+    @Test void followsTheRemainingQuotaReportedByTheEndpoint() {
+        OpenAiRateLimiter limiter = limiter(500, 0, 8, 1);
+        limiter.execute(0, () -> completed(200, Map.of(
+                "x-ratelimit-limit-requests", "500",
+                "x-ratelimit-remaining-requests", "0"))).join();
+        assertFalse(limiter.execute(0, () -> completed(200, Map.of())).isDone());
+    }
+
+    @Test void aCallWhoseDeadlinePassesLeavesTheQueue() {
+        OpenAiRateLimiter limiter = limiter(0, 1000, 8, 1);
+        assertTrue(limiter.execute(800, () -> completed(200, Map.of())).isDone());
+
+        try (Deadline deadline = Deadline.after(Duration.ofMillis(50))) {
+            CompletableFuture<HttpResponse<String>> late = limiter.execute(800, deadline, () -> completed(200, Map.of()));
+            assertInstanceOf(CancellationException.class,
+                    assertThrows(CompletionException.class, late::join).getCause());
+        }
+
+        assertEquals(0, limiter.waiting());
+        // the quota left is not held back by the call that gave up
+        assertTrue(limiter.execute(100, () -> completed(200, Map.of())).isDone());
+    }
+
+    @Test void limitsConcurrentCalls() {
+        OpenAiRateLimiter limiter = limiter(0, 0, 2, 1);
+        CompletableFuture<HttpResponse<String>> first = new CompletableFuture<>();
+        limiter.execute(0, () -> first);
+        limiter.execute(0, CompletableFuture::new);
+
+        AtomicInteger started = new AtomicInteger();
+        CompletableFuture<HttpResponse<String>> third = limiter.execute(0, () -> {
+            started.incrementAndGet();
+            return completed(200, Map.of());
+        });
+        assertEquals(0, started.get());
+
+        first.complete(response(200, Map.of()));
+        assertEquals(200, third.join().statusCode());
+        assertEquals(1, started.get());
+    }
+
+    @Test void halvesTheConcurrencyWhenThrottled() {
+        OpenAiRateLimiter limiter = limiter(0, 0, 8, 1);
+        assertEquals(429, limiter.execute(0, () -> completed(429, Map.of())).join().statusCode());
+        assertEquals(4, limiter.concurrencyLimit());
+        assertEquals(1, limiter.throttled());
+    }
+
+    @Test void retriesThrottledAndFailedResponses() {
+        OpenAiRateLimiter limiter = limiter(0, 0, 8, 3);
+        AtomicInteger calls = new AtomicInteger();
+        HttpResponse<String> response = limiter.execute(0, () -> switch (calls.getAndIncrement()) {
+            case 0 -> completed(429, Map.of("retry-after-ms", "10"));
+            case 1 -> completed(502, Map.of());
+            default -> completed(200, Map.of());
+        }).join();
+
+        assertEquals(200, response.statusCode());
+        assertEquals(3, calls.get());
+        assertEquals(2, limiter.retries());
+    }
+
+    @Test void returnsTheLastResponseOnceAttemptsAreUsedUp() {
+        OpenAiRateLimiter limiter = limiter(0, 0, 8, 2);
+        assertEquals(503, limiter.execute(0, () -> completed(503, Map.of())).join().statusCode());
+        assertEquals(1, limiter.retries());
+    }
+
+    private static OpenAiRateLimiter limiter(long requestsPerMinute, long tokensPerMinute, int concurrency,
+                                             int maxAttempts) {
+        return new OpenAiRateLimiter("chat", requestsPerMinute, tokensPerMinute, concurrency, concurrency,
+                maxAttempts, Duration.ofMillis(5), Duration.ofMillis(20));
+    }
+
+    private static CompletableFuture<HttpResponse<String>> completed(int status, Map<String, String> headers) {
+        return CompletableFuture.completedFuture(response(status, headers));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HttpResponse<String> response(int status, Map<String, String> headers) {
+        HttpResponse<String> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(status);
+        Map<String, List<String>> values = new HashMap<>();
+        headers.forEach((name, value) -> values.put(name, List.of(value)));
+        when(response.headers()).thenReturn(HttpHeaders.of(values, (name, value) -> true));
+        return response;
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.client;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class PromptCacheTest {
+
+    private final OpenAiClient openAiClient = mock(OpenAiClient.class);
+    private final ModelRouter engines = mock(ModelRouter.class);
+    private final PromptCache cache = new PromptCache(engines, "You recommend books.", 100,
+            Duration.ofHours(1), Duration.ofMinutes(10), Duration.ZERO);
+
+    @BeforeEach void routeToOpenAi() {
+        when(engines.chat(any())).thenReturn(openAiClient);
+        when(openAiClient.model()).thenReturn("gpt-4o");
+    }
+
+    @Test void concurrentMissesShareOneUpstreamCall() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        when(openAiClient.promptModelAsync("hello")).thenReturn(upstream);
+
+        CompletableFuture<String> first = cache.promptModel(PromptType.READING, "hello");
+        CompletableFuture<String> second = cache.promptModel(PromptType.READING, "hello");
+        upstream.complete("Hey there!");
+
+        assertEquals("Hey there!", first.join());
+        assertEquals("Hey there!", second.join());
+        assertEquals("Hey there!", cache.promptModel(PromptType.READING, "hello").join());
+        verify(openAiClient, times(1)).promptModelAsync("hello");
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test void theDeadlineCancelsOnlyTheCallersCopy() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        when(openAiClient.promptModelAsync("hello")).thenReturn(upstream);
+
+        CompletableFuture<String> waiting = cache.promptModel(PromptType.READING, "hello");
+        try (Deadline deadline = Deadline.after(Duration.ofMillis(10))) {
+            CompletableFuture<String> cut = cache.promptModel(PromptType.READING, "hello", deadline);
+            assertThrows(CancellationException.class, cut::join);
+        }
+        upstream.complete("Hey there!");
+
+        assertEquals("Hey there!", waiting.join());
+        assertFalse(upstream.isCancelled());
+    }
+
+    @Test void failedCallsAreNotCached() {
+        when(openAiClient.promptModelAsync("hello"))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("boom")))
+                .thenReturn(CompletableFuture.completedFuture("Hey there!"));
+
+        assertThrows(Exception.class, () -> cache.promptModel(PromptType.READING, "hello").join());
+        assertEquals("Hey there!", cache.promptModel(PromptType.READING, "hello").join());
+    }
+
+    @Test void typesWithoutTtlBypassTheCache() {
+        when(openAiClient.promptModelAsync("feedback", Deadline.NONE))
+                .thenReturn(CompletableFuture.completedFuture("Read Dune."));
+
+        cache.promptModel(PromptType.FEEDBACK, "feedback").join();
+        cache.promptModel(PromptType.FEEDBACK, "feedback").join();
+        verify(openAiClient, times(2)).promptModelAsync("feedback", Deadline.NONE);
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,140 @@
+package org.example.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterRouterTest {
+
+    private static final String SELF = "http://localhost:1";
+
+    private HttpServer owner;
+    private ClusterRouter router;
+
+    @AfterEach void stop() {
+        if (owner != null) {
+            owner.stop(0);
+        }
+        if (router != null) {
+            router.shutdown();
+        }
+    }
+
+    @Test void everyChatIsLocalOutsideACluster() {
+        router = new ClusterRouter(false, "", List.of(), "", 128, Duration.ofSeconds(10), "",
+                Duration.ofSeconds(1), 3, Duration.ofMillis(50), new ObjectMapper());
+        assertTrue(router.isLocal(42L));
+    }
+
+    @Test void forwardsUpdatesToTheOwnerWithTheClusterToken() throws IOException {
+        List<String> received = new CopyOnWriteArrayList<>();
+        owner = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        owner.createContext(ClusterRouter.FORWARD_PATH, exchange -> {
+            received.add(exchange.getRequestHeaders().getFirst(ClusterRouter.CLUSTER_TOKEN_HEADER) + " "
+                    + new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        owner.start();
+        String ownerUrl = "http://localhost:" + owner.getAddress().getPort();
+        // the only member, so it owns every chat
+        router = new ClusterRouter(true, SELF, List.of(ownerUrl), "", 128, Duration.ofSeconds(10), "secret",
+                Duration.ofSeconds(1), 3, Duration.ofMillis(50), new ObjectMapper());
+
+        assertFalse(router.isLocal(42L));
+        router.forward(update(42L)).join();
+
+        assertEquals(1, received.size());
+        assertTrue(received.get(0).startsWith("secret "));
+        assertTrue(received.get(0).contains("\"update_id\":7"));
+        assertEquals(1, router.forwarded());
+    }
+
+    @Test void failsWhenTheOwnerIsUnreachable() {
+        router = new ClusterRouter(true, SELF, List.of("http://localhost:9"), "", 128, Duration.ofSeconds(10),
+                "secret", Duration.ofSeconds(1), 3, Duration.ofMillis(50), new ObjectMapper());
+        CompletionException e = assertThrows(CompletionException.class, () -> router.forward(update(42L)).join());
+        assertTrue(ClusterRouter.isUnreachable(e));
+        assertEquals(1, router.forwardFailures());
+    }
+
+    @Test void forwardsAgainWhileTheOwnerIsBusy() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        String ownerUrl = startOwner(() -> calls.incrementAndGet() < 3 ? 429 : 200);
+        router = new ClusterRouter(true, SELF, List.of(ownerUrl), "", 128, Duration.ofSeconds(10), "secret",
+                Duration.ofSeconds(1), 3, Duration.ofMillis(50), new ObjectMapper());
+
+        router.forward(update(42L)).join();
+        assertEquals(3, calls.get());
+        assertEquals(1, router.forwarded());
+    }
+
+    @Test void aBusyOwnerIsNotUnreachable() throws IOException {
+        String ownerUrl = startOwner(() -> 429);
+        router = new ClusterRouter(true, SELF, List.of(ownerUrl), "", 128, Duration.ofSeconds(10), "secret",
+                Duration.ofSeconds(1), 2, Duration.ofMillis(50), new ObjectMapper());
+
+        CompletionException e = assertThrows(CompletionException.class, () -> router.forward(update(42L)).join());
+        assertFalse(ClusterRouter.isUnreachable(e));
+        assertEquals(1, router.forwardFailures());
+    }
+
+    @Test void followsTheMembersFile(@TempDir Path directory) throws IOException {
+        Path members = directory.resolve("members");
+        Files.writeString(members, "# cluster\n" + SELF + "\n");
+        router = new ClusterRouter(true, SELF, List.of(), members.toString(), 128, Duration.ofHours(1), "secret",
+                Duration.ofSeconds(1), 3, Duration.ofMillis(50), new ObjectMapper());
+        assertTrue(router.isLocal(42L));
+
+        Files.writeString(members, "http://localhost:2/\n");
+        Files.setLastModifiedTime(members, FileTime.from(Instant.now().plusSeconds(5)));
+        router.reload();
+        assertEquals(List.of("http://localhost:2"), router.members());
+        assertFalse(router.isLocal(42L));
+    }
+
+    private String startOwner(IntSupplier status) throws IOException {
+        owner = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        owner.createContext(ClusterRouter.FORWARD_PATH, exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(status.getAsInt(), -1);
+            exchange.close();
+        });
+        owner.start();
+        return "http://localhost:" + owner.getAddress().getPort();
+    }
+
+    private static Update update(long chatId) {
+        Chat chat = new Chat();
+        chat.setId(chatId);
+        chat.setType("private");
+        Message message = new Message();
+        message.setChat(chat);
+        message.setText("/start");
+        Update update = new Update();
+        update.setUpdateId(7);
+        update.setMessage(message);
+        return update;
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashRingTest {
+
+    private static final List<String> NODES = List.of("http://localhost:8081", "http://localhost:8082",
+            "http://localhost:8083");
+
+    @Test void spreadsChatsEvenly() {
+        HashRing ring = new HashRing(NODES, 128);
+        Map<String, Integer> owned = new HashMap<>();
+        for (long chatId = 0; chatId < 30_000; chatId++) {
+            owned.merge(ring.owner(Long.toString(chatId)), 1, Integer::sum);
+        }
+        assertEquals(3, owned.size());
+        owned.values().forEach(count -> assertTrue(count > 8_000 && count < 12_000, "owns " + count));
+    }
+
+    @Test void movesOnlyTheChatsOfAnAddedNode() {
+        HashRing before = new HashRing(NODES, 128);
+        HashRing after = new HashRing(List.of("http://localhost:8081", "http://localhost:8082",
+                "http://localhost:8083", "http://localhost:8084"), 128);
+        int moved = 0;
+        for (long chatId = 0; chatId < 10_000; chatId++) {
+            String key = Long.toString(chatId);
+            if (!before.owner(key).equals(after.owner(key))) {
+                moved++;
+                assertEquals("http://localhost:8084", after.owner(key));
+            }
+        }
+        assertTrue(moved > 1_500 && moved < 3_500, "moved " + moved);
+    }
+
+    @Test void ownersDoNotDependOnTheOrderOfTheNodes() {
+        HashRing ring = new HashRing(NODES, 64);
+        HashRing reversed = new HashRing(NODES.reversed(), 64);
+        for (long chatId = 0; chatId < 1_000; chatId++) {
+            assertEquals(ring.owner(Long.toString(chatId)), reversed.owner(Long.toString(chatId)));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.example.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookQuestionRepositoryTest {
+
+    @TempDir Path directory;
+
+    private BookQuestionRepository repository;
+
+    @AfterEach void shutDown() {
+        if (repository != null) {
+            repository.shutdown();
+        }
+    }
+
+    @Test void loadsTheBundledQuestions() {
+        repository = new BookQuestionRepository(new ClassPathResource("questions.txt"), Duration.ZERO,
+                Duration.ofMinutes(30), 100);
+        assertEquals(50, repository.getQuestions().size());
+        assertTrue(repository.getQuestions().contains("Do you prefer standalone novels or a series?"));
+    }
+
+    @Test void neverRepeatsAQuestionWithinAnInterview() throws IOException {
+        repository = open("first?\nsecond?\nthird?\n");
+        Set<String> asked = new HashSet<>();
+        String last = null;
+        for (int i = 0; i < 3; i++) {
+            last = repository.nextQuestion("42");
+            assertTrue(asked.add(last));
+            repository.questionAsked("42");
+        }
+        // all asked, the interview starts over, but not with the question just asked
+        String next = repository.nextQuestion("42");
+        assertTrue(asked.contains(next));
+        assertNotEquals(last, next);
+    }
+
+    @Test void startsOverWithTheOnlyQuestionThereIs() throws IOException {
+        repository = open("only?\n");
+        assertEquals("only?", repository.nextQuestion("42"));
+        repository.questionAsked("42");
+        assertEquals("only?", repository.nextQuestion("42"));
+    }
+
+    @Test void keepsTheDrawnQuestionUntilItIsAsked() throws IOException {
+        repository = open("first?\nsecond?\nthird?\n");
+        String drawn = repository.nextQuestion("42");
+        assertEquals(drawn, repository.nextQuestion("42"));
+        repository.questionAsked("42");
+        assertNotEquals(drawn, repository.nextQuestion("42"));
+    }
+
+    @Test void finishingReturnsTheAnsweredQuestionsInOrder() throws IOException {
+        repository = open("first?\nsecond?\nthird?\n");
+        repository.startSession("42");
+        String first = repository.nextQuestion("42");
+        repository.questionAsked("42");
+        repository.answerReceived("42", "yes");
+        String second = repository.nextQuestion("42");
+        repository.questionAsked("42");
+        repository.answerReceived("42", "no");
+
+        assertEquals(List.of(first, second), repository.finishSession("42"));
+        assertEquals(List.of(), repository.finishSession("42"));
+    }
+
+    @Test void weighsQuestionsByTheFileAndByTheirAnswers() throws IOException {
+        repository = open("""
+                # comments and blank lines are skipped
+
+                3 | weighty?
+                plain?
+                0 | disabled?
+                """);
+        List<BookQuestionRepository.WeightedQuestion> questions =
+                BookQuestionRepository.parse("3 | weighty?\nplain?\n0 | disabled?\nplain?");
+        assertEquals(List.of(new BookQuestionRepository.WeightedQuestion("weighty?", 3),
+                new BookQuestionRepository.WeightedQuestion("plain?", 1)), questions);
+        assertEquals(List.of("weighty?", "plain?"), repository.getQuestions());
+
+        BookQuestionRepository.WeightedQuestion plain = questions.get(1);
+        assertEquals(1, repository.weight(plain));
+        repository.startSession("42");
+        while (!repository.nextQuestion("42").equals("plain?")) {
+            repository.startSession("42");
+        }
+        repository.questionAsked("42");
+        repository.answerReceived("42", "I like long sagas ".repeat(20));
+        assertTrue(repository.weight(plain) > 1);
+    }
+
+    @Test void keepsAPipeWithoutAWeightInTheQuestion() {
+        assertEquals(List.of(new BookQuestionRepository.WeightedQuestion("Fiction | non-fiction: which one?", 1),
+                        new BookQuestionRepository.WeightedQuestion("weighty?", 2.5)),
+                BookQuestionRepository.parse("Fiction | non-fiction: which one?\n2.5 | weighty?"));
+    }
+
+    @Test void reloadsTheFileWhenItChanges() throws IOException {
+        Path file = directory.resolve("questions.txt");
+        repository = open("first?\n");
+        Files.writeString(file, "first?\nsecond?\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+
+        repository.reload();
+        assertEquals(List.of("first?", "second?"), repository.getQuestions());
+
+        // a broken file keeps the questions loaded before
+        Files.writeString(file, "# nothing here\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+        repository.reload();
+        assertEquals(List.of("first?", "second?"), repository.getQuestions());
+    }
+
+    private BookQuestionRepository open(String content) throws IOException {
+        Path file = directory.resolve("questions.txt");
+        Files.writeString(file, content);
+        return new BookQuestionRepository(new FileSystemResource(file), Duration.ZERO, Duration.ofMinutes(30), 100);
+    }
+}
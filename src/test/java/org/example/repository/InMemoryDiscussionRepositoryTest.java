@@ -0,0 +1,97 @@
+package org.example.repository;
+
+import org.example.dto.Question;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryDiscussionRepositoryTest {
+
+    @Test void answersTheLastAskedQuestion() {
+        InMemoryDiscussionRepository repository = repository(3, Duration.ofMinutes(30), 1000);
+        repository.addQuestion("1", "first");
+        assertEquals(1, repository.addAnswer("1", "a"));
+        repository.addQuestion("1", "second");
+        assertEquals(2, repository.addAnswer("1", "b"));
+
+        List<Question> questions = repository.finishInterview("1");
+        assertEquals(List.of("a", "b"), questions.stream().map(Question::getAnswer).toList());
+        assertEquals(0, repository.getUserQuestions("1"));
+    }
+
+    @Test void answerWithoutSessionIsRejected() {
+        InMemoryDiscussionRepository repository = repository(3, Duration.ofMinutes(30), 1000);
+        assertThrows(IllegalStateException.class, () -> repository.addAnswer("1", "a"));
+    }
+
+    @Test void sessionsGrowPastTheConfiguredSize() {
+        InMemoryDiscussionRepository repository = repository(1, Duration.ofMinutes(30), 1000);
+        for (int i = 0; i < 5; i++) {
+            repository.addQuestion("1", "q" + i);
+        }
+        assertEquals(5, repository.finishInterview("1").size());
+    }
+
+    @Test void concurrentSessionsStayIsolated() throws InterruptedException {
+        InMemoryDiscussionRepository repository = repository(3, Duration.ofMinutes(30), 1000);
+        int chats = 500;
+        CountDownLatch done = new CountDownLatch(chats);
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < chats; i++) {
+                String chatId = String.valueOf(i);
+                executor.execute(() -> {
+                    for (int q = 0; q < 3; q++) {
+                        repository.addQuestion(chatId, "q" + q);
+                        repository.addAnswer(chatId, chatId + "-" + q);
+                    }
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        }
+        for (int i = 0; i < chats; i++) {
+            List<Question> questions = repository.finishInterview(String.valueOf(i));
+            assertEquals(3, questions.size());
+            assertEquals(i + "-2", questions.get(2).getAnswer());
+        }
+    }
+
+    @Test void idleSessionsExpire() throws InterruptedException {
+        InMemoryDiscussionRepository repository = repository(3, Duration.ofMillis(1), 1000);
+        repository.addQuestion("1", "first");
+        Thread.sleep(5);
+        repository.sweep();
+        assertEquals(0, repository.liveSessions());
+        assertEquals(1, repository.expiredSessions());
+    }
+
+    @Test void leastRecentlyUsedSessionsAreEvictedOverTheLimit() throws InterruptedException {
+        InMemoryDiscussionRepository repository = repository(3, Duration.ofMinutes(30), 2);
+        repository.addQuestion("1", "q");
+        Thread.sleep(1);
+        repository.addQuestion("2", "q");
+        Thread.sleep(1);
+        // "1" is touched before the limit is exceeded, the early sweep the third session triggers
+        // may run at any time and must come to the same result as the explicit one
+        repository.addAnswer("1", "a");
+        Thread.sleep(1);
+        repository.addQuestion("3", "q");
+        repository.sweep();
+        assertEquals(2, repository.liveSessions());
+        assertEquals(1, repository.evictedSessions());
+        assertEquals(0, repository.getUserQuestions("2"));
+        assertEquals(1, repository.getUserQuestions("1"));
+        assertEquals(1, repository.getUserQuestions("3"));
+    }
+
+    private static InMemoryDiscussionRepository repository(int maxQuestions, Duration ttl, int maxSessions) {
+        return new InMemoryDiscussionRepository(maxQuestions, ttl, maxSessions, Duration.ofHours(1));
+    }
+}
@@ -0,0 +1,57 @@
+package org.example.repository;
+
+import org.example.dto.Question;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournaledDiscussionRepositoryTest {
+
+    @TempDir Path directory;
+
+    @Test void sessionsSurviveARestart() throws IOException {
+        JournaledDiscussionRepository repository = open();
+        repository.addQuestion("1", "first");
+        repository.addAnswer("1", "fantasy");
+        repository.addQuestion("1", "second");
+        repository.addQuestion("2", "other");
+        repository.addQuestion("3", "finished");
+        repository.finishInterview("3");
+        repository.shutdown();
+
+        JournaledDiscussionRepository restarted = open();
+        assertEquals(2, restarted.liveSessions());
+        assertEquals(2, restarted.addAnswer("1", "standalone"));
+        List<Question> questions = restarted.finishInterview("1");
+        assertEquals(List.of("fantasy", "standalone"), questions.stream().map(Question::getAnswer).toList());
+        assertEquals(0, restarted.getUserQuestions("3"));
+        restarted.shutdown();
+    }
+
+    @Test void journalGrowsPastItsInitialSize() throws IOException {
+        JournaledDiscussionRepository repository = open();
+        String longQuestion = "?".repeat(2048);
+        for (int i = 0; i < 100; i++) {
+            repository.addQuestion(String.valueOf(i), longQuestion);
+        }
+        repository.shutdown();
+
+        JournaledDiscussionRepository restarted = open();
+        assertEquals(100, restarted.liveSessions());
+        restarted.shutdown();
+    }
+
+    private JournaledDiscussionRepository open() throws IOException {
+        InMemoryDiscussionRepository sessions =
+                new InMemoryDiscussionRepository(3, Duration.ofMinutes(30), 1000, Duration.ofHours(1));
+        return new JournaledDiscussionRepository(sessions, directory.resolve("sessions.journal").toString(),
+                DataSize.ofKilobytes(4), Duration.ofHours(1), Duration.ofHours(1));
+    }
+}
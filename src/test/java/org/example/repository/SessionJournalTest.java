@@ -0,0 +1,73 @@
+package org.example.repository;
+
+import org.example.dto.Question;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionJournalTest {
+
+    @TempDir Path directory;
+
+    @Test void recordsAppendedWhileCompactingAreKept() throws IOException {
+        SessionJournal journal = new SessionJournal(directory.resolve("sessions.journal"), 64);
+        journal.append(SessionJournal.QUESTION, "1", "first");
+        journal.append(SessionJournal.ANSWER, "1", "fantasy");
+        journal.append(SessionJournal.QUESTION, "2", "dropped");
+        journal.append(SessionJournal.FINISH, "2", null);
+        int mark = journal.size();
+
+        SessionJournal.Compaction compaction = journal.compact(Map.of("1", List.of(question("first", "fantasy"))));
+        // far more than the compacted file was mapped for, so it has to grow while installing
+        String longQuestion = "?".repeat(1024);
+        journal.append(SessionJournal.QUESTION, "1", longQuestion);
+        journal.append(SessionJournal.QUESTION, "3", "meanwhile");
+        journal.install(compaction, mark);
+        journal.append(SessionJournal.ANSWER, "3", "after");
+        journal.close();
+
+        List<String> events = new ArrayList<>();
+        SessionJournal reopened = new SessionJournal(directory.resolve("sessions.journal"), 64);
+        reopened.replay((type, chatId, text) -> events.add(type + ":" + chatId + ":" + text));
+        reopened.close();
+        assertEquals(List.of("1:1:first", "2:1:fantasy", "1:1:" + longQuestion, "1:3:meanwhile", "2:3:after"),
+                events);
+    }
+
+    @Test void replayStopsAtACorruptRecord() throws IOException {
+        Path path = directory.resolve("sessions.journal");
+        SessionJournal journal = new SessionJournal(path, 64);
+        journal.append(SessionJournal.QUESTION, "1", "first");
+        int corrupt = journal.size();
+        journal.append(SessionJournal.ANSWER, "1", "fantasy");
+        journal.append(SessionJournal.QUESTION, "2", "second");
+        journal.close();
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            // the text length of the answer reaches past its record
+            file.seek(corrupt + Integer.BYTES + 1 + Short.BYTES + 1);
+            file.writeInt(1_000_000);
+        }
+
+        List<String> events = new ArrayList<>();
+        SessionJournal reopened = new SessionJournal(path, 64);
+        assertEquals(1, reopened.replay((type, chatId, text) -> events.add(type + ":" + chatId + ":" + text)));
+        assertEquals(corrupt, reopened.size());
+        reopened.close();
+        assertEquals(List.of("1:1:first"), events);
+    }
+
+    private static Question question(String text, String answer) {
+        Question question = new Question();
+        question.setQuestion(text);
+        question.setAnswer(answer);
+        return question;
+    }
+}
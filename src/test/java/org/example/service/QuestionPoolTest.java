@@ -0,0 +1,99 @@
+package org.example.service;
+
+import org.example.client.ModelRouter;
+import org.example.client.OpenAiClient;
+import org.example.client.PromptCache;
+import org.example.client.PromptType;
+import org.example.repository.BookQuestionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class QuestionPoolTest {
+
+    private static final String BASE = "Do you prefer standalone novels or a series?";
+
+    private final OpenAiClient openAiClient = mock(OpenAiClient.class);
+    private final PromptCache promptCache = mock(PromptCache.class);
+    private final BookQuestionRepository questions = mock(BookQuestionRepository.class);
+    private final ModelRouter engines = mock(ModelRouter.class);
+
+    @BeforeEach void routeToOpenAi() {
+        when(engines.chat(PromptType.QUESTION)).thenReturn(openAiClient);
+    }
+
+    @Test void fallsBackToTheBaseQuestionUntilRefilled() {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        when(openAiClient.promptModelAsync(anyString())).thenReturn(pending);
+        QuestionPool pool = new QuestionPool(engines, promptCache, questions, true, 1, 0, 1, 1);
+
+        assertEquals(BASE, pool.rephrase(BASE).join());
+        assertEquals(1, pool.fallbacks());
+
+        when(openAiClient.promptModelAsync(anyString())).thenReturn(new CompletableFuture<>());
+        pending.complete("Picture a cosy bookshop...");
+        assertEquals("Picture a cosy bookshop...", pool.rephrase(BASE).join());
+        assertEquals(1, pool.hits());
+    }
+
+    @Test void prefetchFillsTheFirstQuestionsAndServesRephrasingsInTurn() {
+        AtomicInteger calls = new AtomicInteger();
+        when(questions.getQuestions()).thenReturn(List.of(BASE, "Do you listen to audiobooks?"));
+        when(openAiClient.promptModelAsync(anyString()))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture("rephrasing " + calls.incrementAndGet()));
+        QuestionPool pool = new QuestionPool(engines, promptCache, questions, true, 2, 0, 2, 1);
+
+        pool.prefetch(1).join();
+        assertEquals(2, pool.generated());
+        assertEquals("rephrasing 1", pool.rephrase(BASE).join());
+        assertEquals("rephrasing 2", pool.rephrase(BASE).join());
+        assertEquals("rephrasing 1", pool.rephrase(BASE).join());
+        assertEquals(0, pool.fallbacks());
+    }
+
+    @Test void prefetchWaitsForARefillAlreadyQueued() {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        when(questions.getQuestions()).thenReturn(List.of(BASE));
+        when(openAiClient.promptModelAsync(anyString())).thenReturn(pending);
+        QuestionPool pool = new QuestionPool(engines, promptCache, questions, true, 1, 0, 1, 1);
+        // the first ask queues a refill
+        pool.rephrase(BASE);
+
+        CompletableFuture<Void> prefetched = pool.prefetch(1);
+        assertFalse(prefetched.isDone());
+        pending.complete("Picture a cosy bookshop...");
+        prefetched.join();
+        verify(openAiClient, times(1)).promptModelAsync(anyString());
+    }
+
+    @Test void disabledPoolAsksTheModelThroughTheCache() {
+        when(promptCache.promptModel(eq(PromptType.QUESTION), anyString()))
+                .thenReturn(CompletableFuture.completedFuture("fresh"));
+        QuestionPool pool = new QuestionPool(engines, promptCache, questions, false, 3, 1, 5, 4);
+
+        assertEquals("fresh", pool.rephrase(BASE).join());
+        verify(promptCache).promptModel(eq(PromptType.QUESTION), contains(BASE));
+        verifyNoInteractions(openAiClient);
+    }
+
+    @Test void cancellingARephrasingLeavesTheSharedCallAlone() {
+        CompletableFuture<String> shared = new CompletableFuture<>();
+        when(promptCache.promptModel(eq(PromptType.QUESTION), anyString())).thenReturn(shared);
+        QuestionPool pool = new QuestionPool(engines, promptCache, questions, false, 3, 1, 5, 4);
+
+        CompletableFuture<String> speculative = pool.rephrase(BASE);
+        CompletableFuture<String> waiting = pool.rephrase(BASE);
+        speculative.cancel(true);
+        shared.complete("fresh");
+
+        assertFalse(shared.isCancelled());
+        assertEquals("fresh", waiting.join());
+    }
+}
@@ -0,0 +1,119 @@
+package org.example.service;
+
+import org.example.client.ChatEngine;
+import org.example.client.Deadline;
+import org.example.client.OpenAiClient;
+import org.example.dto.Question;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class RecommendationCacheTest {
+
+    private static final List<String> TASTE = List.of("What do you like to read?");
+    private static final String MODEL = "gpt-4o";
+
+    private final OpenAiClient openAiClient = mock(OpenAiClient.class);
+
+    @Test void servesTheRecommendationOfASimilarProfile() {
+        RecommendationCache cache = new RecommendationCache(openAiClient, true, 0.9f, 10);
+        when(openAiClient.embedAsync(anyString(), any())).thenReturn(CompletableFuture.completedFuture(new float[] {1, 0, 0}));
+        RecommendationCache.Profile first =
+                cache.profile(answers("fantasy, fast-paced, standalone"), TASTE, MODEL, Deadline.NONE).join();
+        assertNull(first.recommendation());
+        first.remember(new ChatEngine.Completion(MODEL, "Read Piranesi."));
+
+        when(openAiClient.embedAsync(anyString(), any())).thenReturn(CompletableFuture.completedFuture(new float[] {2, 0.2f, 0}));
+        assertEquals("Read Piranesi.",
+                cache.profile(answers("fantasy, fast, standalone"), TASTE, MODEL, Deadline.NONE).join().recommendation());
+
+        when(openAiClient.embedAsync(anyString(), any())).thenReturn(CompletableFuture.completedFuture(new float[] {0, 1, 0}));
+        assertNull(cache.profile(answers("history, slow, series"), TASTE, MODEL, Deadline.NONE).join().recommendation());
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test void sameShortAnswersToDifferentQuestionsMiss() {
+        RecommendationCache cache = new RecommendationCache(openAiClient, true, 0.9f, 10);
+        // a stand-in for the embedding model: one dimension per word it knows
+        when(openAiClient.embedAsync(anyString(), any())).thenAnswer(invocation -> {
+            String text = invocation.getArgument(0, String.class).toLowerCase();
+            return CompletableFuture.completedFuture(new float[] {
+                    text.contains("yes") ? 1 : 0, text.contains("series") ? 1 : 0, text.contains("audiobooks") ? 1 : 0});
+        });
+        RecommendationCache.Profile series =
+                cache.profile(answers("Yes."), List.of("Do you like series?"), MODEL, Deadline.NONE).join();
+        series.remember(new ChatEngine.Completion(MODEL, "Read The Expanse."));
+
+        RecommendationCache.Profile audiobooks =
+                cache.profile(answers("Yes."), List.of("Do you listen to audiobooks?"), MODEL, Deadline.NONE).join();
+
+        assertNull(audiobooks.recommendation());
+        assertEquals("Read The Expanse.",
+                cache.profile(answers("Yes!"), List.of("Do you like series?"), MODEL, Deadline.NONE).join().recommendation());
+    }
+
+    @Test void servesOnlyRecommendationsOfTheSameModel() {
+        RecommendationCache cache = new RecommendationCache(openAiClient, true, 0.9f, 10);
+        when(openAiClient.embedAsync(anyString(), any())).thenReturn(CompletableFuture.completedFuture(new float[] {1, 0, 0}));
+        // the local model failed and OpenAI answered instead
+        cache.profile(answers("fantasy"), TASTE, "llama3", Deadline.NONE).join()
+                .remember(new ChatEngine.Completion(MODEL, "Read Piranesi."));
+
+        assertNull(cache.profile(answers("fantasy"), TASTE, "llama3", Deadline.NONE).join().recommendation());
+        assertEquals("Read Piranesi.",
+                cache.profile(answers("fantasy"), TASTE, MODEL, Deadline.NONE).join().recommendation());
+    }
+
+    @Test void skipsSessionsWithoutTheirBaseQuestions() {
+        RecommendationCache cache = new RecommendationCache(openAiClient, true, 0.9f, 10);
+        RecommendationCache.Profile profile = cache.profile(answers("Yes."), List.of(), MODEL, Deadline.NONE).join();
+
+        assertNull(profile.recommendation());
+        profile.remember(new ChatEngine.Completion(MODEL, "Read Piranesi."));
+        assertEquals(0, cache.size());
+        verify(openAiClient, never()).embedAsync(anyString(), any());
+    }
+
+    @Test void theOldestProfileMakesRoom() {
+        RecommendationCache cache = new RecommendationCache(openAiClient, true, 0.99f, 2);
+        cache.put(RecommendationCache.normalize(new float[] {1, 0}), MODEL, "first");
+        cache.put(RecommendationCache.normalize(new float[] {0, 1}), MODEL, "second");
+        cache.put(RecommendationCache.normalize(new float[] {-1, 0}), MODEL, "third");
+
+        assertEquals(2, cache.size());
+        assertNull(cache.find(RecommendationCache.normalize(new float[] {1, 0}), MODEL));
+        assertEquals("second", cache.find(RecommendationCache.normalize(new float[] {0, 1}), MODEL));
+        assertEquals("third", cache.find(RecommendationCache.normalize(new float[] {-1, 0}), MODEL));
+    }
+
+    @Test void failedEmbeddingsOnlyCostTheCache() {
+        RecommendationCache cache = new RecommendationCache(openAiClient, true, 0.9f, 10);
+        when(openAiClient.embedAsync(anyString(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("down")));
+        RecommendationCache.Profile profile = cache.profile(answers("fantasy"), TASTE, MODEL, Deadline.NONE).join();
+
+        assertNull(profile.recommendation());
+        profile.remember(new ChatEngine.Completion(MODEL, "Read Piranesi."));
+        assertEquals(0, cache.size());
+    }
+
+    @Test void dotProductCoversTheTail() {
+        float[] vector = {1, 2, 3, 4, 5};
+        float[] arena = {0, 0, 1, 1, 1, 1, 1};
+        assertEquals(15f, RecommendationCache.dot(arena, 2, vector));
+    }
+
+    private static List<Question> answers(String answer) {
+        Question question = new Question();
+        question.setQuestion("What do you like to read?");
+        question.setAnswer(answer);
+        return List.of(question);
+    }
+}
@@ -0,0 +1,30 @@
+package org.example.service;
+
+import org.example.client.Conversation;
+import org.example.client.TokenCounter;
+import org.example.dto.GptRequest;
+import org.example.dto.Question;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VoiceCommandTest {
+
+    @Test void feedbackLeavesOutQuestionsNeverAnswered() {
+        Question answered = new Question();
+        answered.setQuestion("Which genre do you enjoy?");
+        answered.setAnswer("Science fiction.");
+        Question skipped = new Question();
+        skipped.setQuestion("Which book did you read last?");
+
+        List<GptRequest.Message> messages = VoiceCommand.feedbackConversation(
+                new Conversation(new TokenCounter("gpt-4o"), 8000), List.of(answered, skipped)).messages();
+
+        assertEquals(List.of("system", "assistant", "user", "user"),
+                messages.stream().map(GptRequest.Message::getRole).toList());
+        assertTrue(messages.stream().allMatch(message -> message.getContent() != null));
+        assertEquals("Science fiction.", messages.get(2).getContent());
+    }
+}
@@ -0,0 +1,110 @@
+package org.example.telegram;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.Message;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class StreamingReplyTest {
+
+    private final Bot bot = mock(Bot.class);
+    private final TelegramSender sender = mock(TelegramSender.class);
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    // answers for the next requests, requests without one succeed at once
+    private final Queue<CompletableFuture<Object>> responses = new ArrayDeque<>();
+
+    @BeforeEach void recordRequests() {
+        doAnswer(invocation -> {
+            BotApiMethod<?> method = invocation.getArgument(2);
+            if (method instanceof SendMessage message) {
+                requests.add("send:" + message.getText());
+            } else if (method instanceof EditMessageText edit) {
+                requests.add("edit " + edit.getMessageId() + ":" + edit.getText());
+            }
+            CompletableFuture<Object> response = responses.poll();
+            return response != null ? response : CompletableFuture.completedFuture(sent(requests.size()));
+        }).when(sender).submit(any(), anyString(), any());
+    }
+
+    @Test void continuesInANewMessageBeyondTheSizeLimit() {
+        StreamingReply reply = new StreamingReply(bot, sender, "42", Duration.ZERO);
+        String full = "a".repeat(TelegramSender.MAX_MESSAGE_LENGTH);
+
+        reply.append("a".repeat(4000));
+        reply.append("a".repeat(TelegramSender.MAX_MESSAGE_LENGTH - 4000) + "bb");
+        reply.finish(full + "bb").join();
+
+        assertEquals(List.of("send:" + "a".repeat(4000), "edit 1:" + full, "send:bb"), requests);
+    }
+
+    @Test void batchesTextThatArrivesWhileARequestIsInFlight() {
+        CompletableFuture<Object> firstSend = new CompletableFuture<>();
+        responses.add(firstSend);
+        StreamingReply reply = new StreamingReply(bot, sender, "42", Duration.ZERO);
+
+        reply.append("Try ");
+        reply.append("Pira");
+        reply.append("nesi");
+        CompletableFuture<Void> done = reply.finish("Try Piranesi.");
+        assertEquals(List.of("send:Try "), requests);
+        assertFalse(done.isDone());
+
+        firstSend.complete(sent(7));
+        done.join();
+        assertEquals(List.of("send:Try ", "edit 7:Try Piranesi."), requests);
+    }
+
+    @Test void publishesAgainOnFinishAfterAFailedEdit() {
+        StreamingReply reply = new StreamingReply(bot, sender, "42", Duration.ZERO);
+        reply.append("Try ");
+        responses.add(CompletableFuture.failedFuture(new IllegalStateException("Too Many Requests")));
+        reply.append("Piranesi");
+
+        reply.finish("Try Piranesi").join();
+
+        assertEquals(List.of("send:Try ", "edit 1:Try Piranesi", "edit 1:Try Piranesi"), requests);
+    }
+
+    @Test void onlyTheFirstFinishCounts() {
+        StreamingReply reply = new StreamingReply(bot, sender, "42", Duration.ZERO);
+        reply.append("Try ");
+
+        CompletableFuture<Void> done = reply.finish("Sorry, that took me too long.");
+        reply.append("Piranesi");
+        assertSame(done, reply.finish("Try Piranesi"));
+        done.join();
+
+        assertEquals(List.of("send:Try ", "edit 1:Sorry, that took me too long."), requests);
+    }
+
+    @Test void keepsEditsApartByTheMinimumInterval() {
+        StreamingReply reply = new StreamingReply(bot, sender, "42", Duration.ofHours(1));
+
+        reply.append("Try ");
+        reply.append("Piranesi");
+        assertEquals(List.of("send:Try "), requests);
+
+        reply.finish("Try Piranesi").join();
+        assertEquals(List.of("send:Try ", "edit 1:Try Piranesi"), requests);
+    }
+
+    private static Message sent(int messageId) {
+        Message message = new Message();
+        message.setMessageId(messageId);
+        return message;
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.telegram;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.metrics.PipelineMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.ResponseParameters;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class TelegramSenderTest {
+
+    private final DefaultAbsSender bot = mock(DefaultAbsSender.class);
+    private final TelegramSender sender = new TelegramSender(Duration.ofMillis(200), 30, 3, Duration.ZERO,
+            new PipelineMetrics(new SimpleMeterRegistry()));
+
+    @AfterEach void shutDown() {
+        sender.shutdown();
+    }
+
+    @Test void splitsLongTextsAtWordBoundaries() {
+        String text = "Piranesi ".repeat(1000);
+        List<String> parts = TelegramSender.split(text, TelegramSender.MAX_MESSAGE_LENGTH);
+
+        assertEquals(3, parts.size());
+        assertTrue(parts.stream().allMatch(part -> part.length() <= TelegramSender.MAX_MESSAGE_LENGTH));
+        assertTrue(parts.get(0).endsWith("Piranesi "));
+        assertEquals(text, String.join("", parts));
+        assertEquals(List.of("short"), TelegramSender.split("short", TelegramSender.MAX_MESSAGE_LENGTH));
+    }
+
+    @Test void sendsTheMessagesOfAChatInOrderAndApart() throws TelegramApiException {
+        List<String> texts = new CopyOnWriteArrayList<>();
+        List<Long> sentAt = new CopyOnWriteArrayList<>();
+        when(bot.executeAsync(any(SendMessage.class))).thenAnswer(invocation -> {
+            texts.add(invocation.<SendMessage>getArgument(0).getText());
+            sentAt.add(System.nanoTime());
+            return CompletableFuture.completedFuture(new Message());
+        });
+
+        CompletableFuture<Void> first = sender.sendText(bot, "42", "first");
+        CompletableFuture<Void> second = sender.sendText(bot, "42", "second");
+        CompletableFuture.allOf(first, second).join();
+
+        assertEquals(List.of("first", "second"), texts);
+        assertTrue(sentAt.get(1) - sentAt.get(0) >= Duration.ofMillis(200).toNanos());
+    }
+
+    @Test void otherChatsDoNotWait() throws TelegramApiException {
+        when(bot.executeAsync(any(SendMessage.class))).thenReturn(CompletableFuture.completedFuture(new Message()));
+        sender.sendText(bot, "42", "first").join();
+
+        long start = System.nanoTime();
+        sender.sendText(bot, "43", "second").join();
+        assertTrue(System.nanoTime() - start < Duration.ofMillis(200).toNanos());
+    }
+
+    @Test void retriesAfterTheTimeTelegramAsksFor() throws TelegramApiException {
+        ResponseParameters parameters = mock(ResponseParameters.class);
+        when(parameters.getRetryAfter()).thenReturn(1);
+        TelegramApiRequestException tooManyRequests = mock(TelegramApiRequestException.class);
+        when(tooManyRequests.getErrorCode()).thenReturn(429);
+        when(tooManyRequests.getParameters()).thenReturn(parameters);
+        AtomicInteger calls = new AtomicInteger();
+        when(bot.executeAsync(any(SendMessage.class))).thenAnswer(invocation -> calls.getAndIncrement() == 0
+                ? CompletableFuture.failedFuture(tooManyRequests)
+                : CompletableFuture.completedFuture(new Message()));
+
+        long start = System.nanoTime();
+        sender.sendText(bot, "42", "hello").join();
+
+        assertEquals(2, calls.get());
+        assertTrue(System.nanoTime() - start >= Duration.ofSeconds(1).toNanos());
+        assertEquals(1, sender.throttled());
+        assertEquals(0, sender.queued());
+    }
+
+    @Test void aThrottledChatDoesNotHoldBackTheOthers() throws TelegramApiException {
+        TelegramApiRequestException tooManyRequests = tooManyRequests(30);
+        when(bot.executeAsync(any(SendMessage.class))).thenAnswer(invocation ->
+                "41".equals(invocation.<SendMessage>getArgument(0).getChatId())
+                        ? CompletableFuture.failedFuture(tooManyRequests)
+                        : CompletableFuture.completedFuture(new Message()));
+
+        CompletableFuture<Void> throttledChat = sender.sendText(bot, "41", "held back");
+        long start = System.nanoTime();
+        // the second message is due one chat interval after the first, long before chat 41 may retry
+        CompletableFuture<Void> first = sender.sendText(bot, "42", "first");
+        CompletableFuture<Void> second = sender.sendText(bot, "42", "second");
+        CompletableFuture.allOf(first, second).join();
+
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+        assertFalse(throttledChat.isDone());
+        assertEquals(1, sender.throttled());
+    }
+
+    private static TelegramApiRequestException tooManyRequests(int retryAfter) {
+        ResponseParameters parameters = mock(ResponseParameters.class);
+        when(parameters.getRetryAfter()).thenReturn(retryAfter);
+        TelegramApiRequestException tooManyRequests = mock(TelegramApiRequestException.class);
+        when(tooManyRequests.getErrorCode()).thenReturn(429);
+        when(tooManyRequests.getParameters()).thenReturn(parameters);
+        return tooManyRequests;
+    }
+}
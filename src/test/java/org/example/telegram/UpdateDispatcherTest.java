@@ -0,0 +1,112 @@
+package org.example.telegram;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateDispatcherTest {
+
+    private UpdateDispatcher dispatcher = new UpdateDispatcher(8, 2, Duration.ofSeconds(1));
+    private final List<String> started = new CopyOnWriteArrayList<>();
+
+    @AfterEach void shutDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test void updatesOfAChatRunInOrder() throws Exception {
+        CompletableFuture<Object> first = new CompletableFuture<>();
+        CompletableFuture<Void> second = new CompletableFuture<>();
+        dispatcher.dispatch(1L, () -> record("1a", first));
+        dispatcher.dispatch(1L, () -> {
+            started.add("1b");
+            second.complete(null);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        awaitValue(1, started::size);
+        assertFalse(second.isDone());
+        first.complete(null);
+        second.get(1, TimeUnit.SECONDS);
+        assertEquals(List.of("1a", "1b"), started);
+        awaitValue(0, dispatcher::inFlight);
+    }
+
+    @Test void chatsDoNotWaitForEachOther() throws Exception {
+        CompletableFuture<Object> blocked = new CompletableFuture<>();
+        CompletableFuture<Object> other = new CompletableFuture<>();
+        dispatcher.dispatch(1L, () -> record("1a", blocked));
+        dispatcher.dispatch(2L, () -> {
+            other.complete(null);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        other.get(1, TimeUnit.SECONDS);
+        awaitValue(1, dispatcher::inFlight);
+        blocked.complete(null);
+        awaitValue(0, dispatcher::inFlight);
+    }
+
+    @Test void failedUpdatesReleaseTheirSlot() throws InterruptedException {
+        dispatcher.dispatch(1L, () -> {
+            throw new IllegalStateException("boom");
+        });
+        dispatcher.dispatch(1L, () -> CompletableFuture.failedFuture(new IllegalStateException("boom")));
+        awaitValue(0, dispatcher::inFlight);
+        // the chat is at its limit of two until both failed updates give their slot back
+        dispatcher.dispatch(1L, () -> record("1c", CompletableFuture.completedFuture(null)));
+
+        awaitValue(0, dispatcher::inFlight);
+        assertEquals(List.of("1c"), started);
+    }
+
+    @Test void dropsUpdatesBeyondTheLimitOfAChat() throws InterruptedException {
+        CompletableFuture<Object> blocked = new CompletableFuture<>();
+        dispatcher.dispatch(1L, () -> record("1a", blocked));
+        dispatcher.dispatch(1L, () -> record("1b", CompletableFuture.completedFuture(null)));
+        assertTrue(dispatcher.tryDispatch(1L, () -> record("1c", CompletableFuture.completedFuture(null))));
+        assertTrue(dispatcher.tryDispatch(2L, () -> record("2a", CompletableFuture.completedFuture(null))));
+
+        assertEquals(1, dispatcher.dropped());
+        blocked.complete(null);
+        awaitValue(0, dispatcher::inFlight);
+        assertFalse(started.contains("1c"));
+        assertTrue(started.containsAll(List.of("1a", "1b", "2a")));
+    }
+
+    @Test void updatesRejectedOnShutdownReleaseTheirSlot() throws InterruptedException {
+        dispatcher.shutdown();
+        dispatcher = new UpdateDispatcher(8, 2, Duration.ofMillis(50));
+        CompletableFuture<Object> blocked = new CompletableFuture<>();
+        dispatcher.dispatch(1L, () -> record("1a", blocked));
+        dispatcher.dispatch(1L, () -> record("1b", CompletableFuture.completedFuture(null)));
+        awaitValue(1, started::size);
+
+        // gives up waiting for the blocked update and stops the executor
+        dispatcher.shutdown();
+        blocked.complete(null);
+
+        awaitValue(0, dispatcher::inFlight);
+        assertEquals(List.of("1a"), started);
+    }
+
+    private CompletableFuture<Object> record(String update, CompletableFuture<Object> result) {
+        started.add(update);
+        return result;
+    }
+
+    private static void awaitValue(int expected, IntSupplier actual) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (actual.getAsInt() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(expected, actual.getAsInt());
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.telegram;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class WebhookControllerTest {
+
+    private static final String SECRET = "s3cr3t-token";
+
+    private final Bot bot = mock(Bot.class);
+    private final WebhookController controller = new WebhookController(bot, SECRET, 100);
+
+    @Test void rejectsCallsWithoutTheSecretToken() {
+        assertEquals(HttpStatus.UNAUTHORIZED, controller.receive(null, update(1)).getStatusCode());
+        assertEquals(HttpStatus.UNAUTHORIZED, controller.receive("guess", update(1)).getStatusCode());
+        verify(bot, never()).offerUpdate(any());
+    }
+
+    @Test void processesARedeliveredUpdateOnce() {
+        when(bot.offerUpdate(any())).thenReturn(true);
+        Update update = update(7);
+
+        assertEquals(HttpStatus.OK, controller.receive(SECRET, update).getStatusCode());
+        assertEquals(HttpStatus.OK, controller.receive(SECRET, update).getStatusCode());
+        verify(bot, times(1)).offerUpdate(update);
+    }
+
+    @Test void asksForRedeliveryWhenBusy() {
+        Update update = update(8);
+        when(bot.offerUpdate(update)).thenReturn(false, true);
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, controller.receive(SECRET, update).getStatusCode());
+        assertEquals(HttpStatus.OK, controller.receive(SECRET, update).getStatusCode());
+        verify(bot, times(2)).offerUpdate(update);
+    }
+
+    @Test void remembersOnlyTheWindowOfRecentUpdates() {
+        RecentUpdates recentUpdates = new RecentUpdates(2);
+        assertTrue(recentUpdates.add(1));
+        assertTrue(recentUpdates.add(2));
+        assertFalse(recentUpdates.add(1));
+        assertTrue(recentUpdates.add(3));
+        assertTrue(recentUpdates.add(1));
+    }
+
+    private static Update update(int updateId) {
+        Update update = new Update();
+        update.setUpdateId(updateId);
+        return update;
+    }
+}